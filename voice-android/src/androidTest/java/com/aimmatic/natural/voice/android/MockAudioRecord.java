@@ -21,6 +21,7 @@ import android.support.annotation.NonNull;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Random;
 
@@ -80,6 +81,19 @@ abstract class MockAudioRecord {
                         // Do nothing here prevent instrument test failed to start record
                     }
 
+                    @Override
+                    public int read(@NonNull ByteBuffer audioBuffer, int sizeInBytes) {
+                        // audio record does not change the position of the buffer
+                        byte[] audioData = new byte[sizeInBytes];
+                        int size = read(audioData, 0, sizeInBytes);
+                        if (size > 0) {
+                            int position = audioBuffer.position();
+                            audioBuffer.put(audioData, 0, size);
+                            audioBuffer.position(position);
+                        }
+                        return size;
+                    }
+
                     @Override
                     public int read(@NonNull byte[] audioData, int offsetInBytes, int sizeInBytes) {
                         try {
@@ -21,10 +21,8 @@ import android.content.res.Resources;
 
 import com.aimmatic.natural.oauth.AccessToken;
 import com.aimmatic.natural.oauth.Profile;
-import com.google.gson.Gson;
 
 import java.io.File;
-import java.util.concurrent.TimeUnit;
 
 import okhttp3.OkHttpClient;
 
@@ -37,12 +35,20 @@ public class AndroidAppContext implements AppContext {
     private static final String pref = "AimMaticPref";
     private static final String token = "AimMaticPref-Token";
     private static final String refreshToken = "AimMaticPref-RefreshToken";
+    private static final String tokenExpiresAt = "AimMaticPref-TokenExpiresAt";
     private static final String userProfile = "AimMaticPref-UserProfile";
     private static final String currentAppId = "AimMaticPref-AppId";
     private static final String currentCustomerId = "AimMaticPref-CustomerId";
 
+    // a client with the SDK interceptor, shared by every AndroidAppContext of the process but not by subclasses
+    private static OkHttpClient okHttpClient;
+    // in-memory copy of the saved access token, read from the preference once, guarded by the class
+    private static AccessToken cachedAccessToken;
+    private static boolean accessTokenLoaded;
+
     private Context context;
-    private OkHttpClient okHttpClient;
+    // a client with an interceptor bound to this subclass instance
+    private OkHttpClient ownHttpClient;
 
     /**
      * Create Android App Context that return ApiKey from Android Manifest
@@ -76,14 +82,29 @@ public class AndroidAppContext implements AppContext {
      * {@inheritDoc}
      */
     @Override
-    public synchronized OkHttpClient getOkHttpClient() {
-        if (okHttpClient == null) {
-            okHttpClient = new OkHttpClient().newBuilder()
-                    .writeTimeout(20, TimeUnit.SECONDS)
-                    .readTimeout(20, TimeUnit.SECONDS)
-                    .addInterceptor(new Interceptor(this)).build();
+    public OkHttpClient getOkHttpClient() {
+        if (getClass() != AndroidAppContext.class) {
+            // a subclass may override the headers, its interceptor must ask this instance. The client
+            // is derived from the base client so it still share the connection pool.
+            synchronized (this) {
+                if (ownHttpClient == null) {
+                    ownHttpClient = HttpClients.getBaseClient().newBuilder()
+                            .addInterceptor(new Interceptor(this)).build();
+                }
+                return ownHttpClient;
+            }
+        }
+        synchronized (AndroidAppContext.class) {
+            if (okHttpClient == null) {
+                // app context only read the application's preference and manifest, the interceptor
+                // can hold the application context for the lifetime of the process
+                Context appCtx = context.getApplicationContext();
+                AndroidAppContext appContext = new AndroidAppContext(appCtx != null ? appCtx : context);
+                okHttpClient = HttpClients.getBaseClient().newBuilder()
+                        .addInterceptor(new Interceptor(appContext)).build();
+            }
+            return okHttpClient;
         }
-        return okHttpClient;
     }
 
     /**
@@ -91,20 +112,32 @@ public class AndroidAppContext implements AppContext {
      */
     @Override
     public AccessToken getAccessToken() {
-        SharedPreferences sp = context.getSharedPreferences(pref, Context.MODE_PRIVATE);
-        AccessToken accessToken = new AccessToken(
-                sp.getString(token, null), sp.getString(refreshToken, null));
-        return (accessToken.getToken() == null) ? null : accessToken;
+        synchronized (AndroidAppContext.class) {
+            if (!accessTokenLoaded) {
+                SharedPreferences sp = context.getSharedPreferences(pref, Context.MODE_PRIVATE);
+                AccessToken accessToken = new AccessToken(
+                        sp.getString(token, null), sp.getString(refreshToken, null), sp.getLong(tokenExpiresAt, 0));
+                cachedAccessToken = (accessToken.getToken() == null) ? null : accessToken;
+                accessTokenLoaded = true;
+            }
+            return cachedAccessToken;
+        }
     }
 
     /**
-     * Save access token to a share preference
+     * Save access token to a share preference. The token is used by the next requests right away.
      *
      * @param accessToken user's access token
      */
     public void saveAccessToken(AccessToken accessToken) {
+        synchronized (AndroidAppContext.class) {
+            cachedAccessToken = (accessToken.getToken() == null) ? null : accessToken;
+            accessTokenLoaded = true;
+        }
+        Interceptor.invalidateHeaders();
         SharedPreferences sp = context.getSharedPreferences(pref, Context.MODE_PRIVATE);
-        sp.edit().putString(token, accessToken.getToken()).putString(refreshToken, accessToken.getRefreshToken()).apply();
+        sp.edit().putString(token, accessToken.getToken()).putString(refreshToken, accessToken.getRefreshToken())
+                .putLong(tokenExpiresAt, accessToken.getExpiresAt()).apply();
     }
 
     /**
@@ -116,7 +149,7 @@ public class AndroidAppContext implements AppContext {
         String jsonProfile = sp.getString(userProfile, null);
         if (jsonProfile != null) {
             try {
-                return new Gson().fromJson(jsonProfile, Profile.class);
+                return Json.getGson().fromJson(jsonProfile, Profile.class);
             } catch (Exception e) {
                 return null;
             }
@@ -131,7 +164,7 @@ public class AndroidAppContext implements AppContext {
      */
     public void saveUserProfile(Profile profile) {
         SharedPreferences sp = context.getSharedPreferences(pref, Context.MODE_PRIVATE);
-        String jsonProfile = new Gson().toJson(profile);
+        String jsonProfile = Json.getGson().toJson(profile);
         sp.edit().putString(userProfile, jsonProfile).apply();
     }
 
@@ -142,6 +175,7 @@ public class AndroidAppContext implements AppContext {
     public void setAppId(String appId) {
         SharedPreferences sp = context.getSharedPreferences(pref, Context.MODE_PRIVATE);
         sp.edit().putString(currentAppId, appId).apply();
+        Interceptor.invalidateHeaders();
     }
 
     /**
@@ -160,6 +194,7 @@ public class AndroidAppContext implements AppContext {
     public void setCustomerId(String customerId) {
         SharedPreferences sp = context.getSharedPreferences(pref, Context.MODE_PRIVATE);
         sp.edit().putString(currentCustomerId, customerId).apply();
+        Interceptor.invalidateHeaders();
     }
 
     /**
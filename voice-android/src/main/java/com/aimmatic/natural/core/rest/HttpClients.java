@@ -0,0 +1,49 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.core.rest;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * This class own the process-wide http client of the SDK. Every client use by the SDK is derived
+ * from the base client with {@link OkHttpClient#newBuilder()}, so they all share one connection pool
+ * and one dispatcher. The keep-alive connections to AimMatic servers are reused across requests and
+ * only one set of threads is created.
+ */
+public final class HttpClients {
+
+    private HttpClients() {
+    }
+
+    // lazy initialization holder, the client is created on first use
+    private static class Holder {
+        static final OkHttpClient BASE = new OkHttpClient.Builder()
+                .writeTimeout(20, TimeUnit.SECONDS)
+                .readTimeout(20, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Get the base http client. It has no interceptor, a client that need to inject header should
+     * derive from it with {@link OkHttpClient#newBuilder()} instead of creating a new client.
+     *
+     * @return the shared okhttp client
+     */
+    public static OkHttpClient getBaseClient() {
+        return Holder.BASE;
+    }
+
+}
@@ -14,16 +14,21 @@ limitations under the License.
 package com.aimmatic.natural.core.rest;
 
 import com.aimmatic.natural.oauth.AccessToken;
-import com.aimmatic.natural.oauth.AimMatic;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import okhttp3.Request;
 import okhttp3.Response;
 
 /**
  * This class handle interceptor of OKHttp to inject the apikey and necessary header
- * in request header. Its also include a custom user-agent for the request.
+ * in request header. Its also include a custom user-agent for the request. When the server reject the
+ * token, it's renewed once for all the concurrent requests and each request is replayed with the
+ * new token.
+ * <p>
+ * The headers are computed once and reused by every request until the token change or
+ * {@link #invalidateHeaders()} is called, so a request doesn't read the manifest or the preference.
  */
 
 public class Interceptor implements okhttp3.Interceptor {
@@ -33,8 +38,28 @@ public class Interceptor implements okhttp3.Interceptor {
     private static final String xAppId = "X-App-Id";
     private static final String xCustomerId = "X-Customer-Id";
 
+    // bumped when the app id, the customer id or the token is changed
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    // immutable headers added to every request
+    private static final class HeaderSnapshot {
+        final int generation;
+        // token the headers were computed with, null for api key
+        final String token;
+        final String[] namesAndValues;
+
+        HeaderSnapshot(int generation, String token, String[] namesAndValues) {
+            this.generation = generation;
+            this.token = token;
+            this.namesAndValues = namesAndValues;
+        }
+    }
+
     // interface app context
     private AppContext appContext;
+    private volatile HeaderSnapshot snapshot;
+    // single-flight renewal of the access token
+    private final TokenRenewal tokenRenewal;
 
     /**
      * Create Interceptor instance from the given app context
@@ -43,6 +68,7 @@ public class Interceptor implements okhttp3.Interceptor {
      */
     public Interceptor(AppContext appContext) {
         this.appContext = appContext;
+        this.tokenRenewal = new TokenRenewal(appContext);
     }
 
     /**
@@ -52,42 +78,80 @@ public class Interceptor implements okhttp3.Interceptor {
     public Response intercept(Chain chain) throws IOException {
         Request request = chain.request();
         AccessToken accessToken = appContext.getAccessToken();
+        if (accessToken != null) {
+            // renew an expiring token before sending so the body is not sent twice
+            accessToken = tokenRenewal.ensureFresh(accessToken);
+        }
         request = rebuildRequest(accessToken, request);
         Response response = chain.proceed(request);
         if (response.code() == 401 && accessToken != null) {
-            accessToken = AimMatic.renewToken(accessToken.getRefreshToken());
-            if (accessToken != null) {
-                if (appContext instanceof AndroidAppContext) {
-                    ((AndroidAppContext) appContext).saveAccessToken(accessToken);
-                }
-                request = rebuildRequest(accessToken, request);
+            AccessToken renewed;
+            try {
+                renewed = tokenRenewal.renew(accessToken);
+            } catch (IOException e) {
+                response.close();
+                throw e;
+            }
+            if (renewed != null) {
+                response.close();
+                request = rebuildRequest(renewed, request);
                 response = chain.proceed(request);
             }
         }
         return response;
     }
 
+    /**
+     * Discard the headers computed by every interceptor. An app context must call it when the api key,
+     * the app id, the customer id or the access token is changed.
+     */
+    public static void invalidateHeaders() {
+        generation.incrementAndGet();
+    }
+
     private Request rebuildRequest(AccessToken accessToken, Request request) {
+        String[] namesAndValues = headers(accessToken).namesAndValues;
+        Request.Builder builder = request.newBuilder();
+        // header replace the value set before a replay
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            builder.header(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return builder.build();
+    }
+
+    // get the headers of the given token, computed again only if something changed
+    private HeaderSnapshot headers(AccessToken accessToken) {
+        String token = accessToken != null ? accessToken.getToken() : null;
+        int currentGeneration = generation.get();
+        HeaderSnapshot current = snapshot;
+        if (current != null && current.generation == currentGeneration &&
+                (token == null ? current.token == null : token.equals(current.token))) {
+            return current;
+        }
         try {
-            Request.Builder builder = request.newBuilder();
-            builder.addHeader(userAgent, "AimMatic 1.0");
-            if (accessToken != null) {
-                builder.addHeader(authorization, "Bearer " + accessToken.getToken());
-            } else {
-                builder.addHeader(authorization, "AimMatic " + appContext.getApiKey());
-            }
+            String authorizationValue = token != null ? "Bearer " + token : "AimMatic " + appContext.getApiKey();
             String appId = appContext.getAppId();
+            String customerId = appContext.getCustomerId();
+            String[] namesAndValues = new String[4 + (appId != null ? 2 : 0) + (customerId != null ? 2 : 0)];
+            int i = 0;
+            namesAndValues[i++] = userAgent;
+            namesAndValues[i++] = "AimMatic 1.0";
+            namesAndValues[i++] = authorization;
+            namesAndValues[i++] = authorizationValue;
             if (appId != null) {
-                builder.addHeader(xAppId, appId);
+                namesAndValues[i++] = xAppId;
+                namesAndValues[i++] = appId;
             }
-            String customerId = appContext.getCustomerId();
             if (customerId != null) {
-                builder.addHeader(xCustomerId, customerId);
+                namesAndValues[i++] = xCustomerId;
+                namesAndValues[i] = customerId;
             }
-            return builder.build();
+            current = new HeaderSnapshot(currentGeneration, token, namesAndValues);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+        snapshot = current;
+        return current;
     }
 
 }
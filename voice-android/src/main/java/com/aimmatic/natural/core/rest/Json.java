@@ -0,0 +1,138 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.aimmatic.natural.core.rest;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+
+import okhttp3.ResponseBody;
+
+/**
+ * This class own the process-wide Gson of the SDK. Gson cache the type adapter of each class it has
+ * seen, so using one instance avoid to resolve the adapters again on every response. The response
+ * types of the SDK have a hand-written adapter declared with {@link com.google.gson.annotations.JsonAdapter},
+ * they are parsed without reflection.
+ */
+public final class Json {
+
+    private Json() {
+    }
+
+    // lazy initialization holder, the gson is created on first use
+    private static class Holder {
+        static final Gson GSON = new GsonBuilder()
+                .disableHtmlEscaping()
+                .create();
+    }
+
+    /**
+     * Get the shared gson
+     *
+     * @return the shared gson
+     */
+    public static Gson getGson() {
+        return Holder.GSON;
+    }
+
+    /**
+     * Parse a response body as it's read from the network then close it. The body is never
+     * loaded into a string.
+     *
+     * @param body a response body
+     * @param type a type of the response
+     * @param <T>  a type of the response
+     * @return the response or null if the body is empty
+     * @throws IOException                        if the body can't be read
+     * @throws com.google.gson.JsonParseException if the body is not a valid response
+     */
+    public static <T> T fromJson(ResponseBody body, Class<T> type) throws IOException {
+        try {
+            return getGson().fromJson(body.charStream(), type);
+        } catch (JsonIOException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * Read a string value which can be null
+     *
+     * @param in a json reader positioned on a value
+     * @return the string or null
+     * @throws IOException if the value can't be read
+     */
+    public static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Read an int value which can be null
+     *
+     * @param in a json reader positioned on a value
+     * @return the int or 0 if the value is null
+     * @throws IOException if the value can't be read
+     */
+    public static int nextInt(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return 0;
+        }
+        return in.nextInt();
+    }
+
+    /**
+     * Read a long value which can be null
+     *
+     * @param in a json reader positioned on a value
+     * @return the long or 0 if the value is null
+     * @throws IOException if the value can't be read
+     */
+    public static long nextLong(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return 0;
+        }
+        return in.nextLong();
+    }
+
+    /**
+     * Read a double value which can be null
+     *
+     * @param in a json reader positioned on a value
+     * @return the double or 0 if the value is null
+     * @throws IOException if the value can't be read
+     */
+    public static double nextDouble(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return 0;
+        }
+        return in.nextDouble();
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.core.rest;
+
+import com.aimmatic.natural.oauth.AccessToken;
+import com.aimmatic.natural.oauth.AimMatic;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renew the access token of an app context with at most one request in flight. When many requests
+ * are rejected together, the first caller renew the token and the others wait for its result, then
+ * every caller replay its request with the same new token. The new token is written through the app
+ * context so the next requests use it.
+ * <p>
+ * When the expiry of a token is known, it's renewed on a background thread shortly before it
+ * expires, so a request never fail with an expired token and never has to send its body twice.
+ * This class is thread safe.
+ */
+class TokenRenewal {
+
+    // a token is renewed this long in millisecond before it expires
+    static final long RENEW_AHEAD = 60 * 1000;
+
+    /**
+     * A request that exchange a refresh token for a new token
+     */
+    interface Renewer {
+        /**
+         * Renew a token
+         *
+         * @param refreshToken a valid refresh token
+         * @return a new token or null if the server didn't give one
+         * @throws IOException if the request failed
+         */
+        AccessToken renew(String refreshToken) throws IOException;
+    }
+
+    // renew with AimMatic account service
+    private static final Renewer ACCOUNT_SERVICE = new Renewer() {
+        @Override
+        public AccessToken renew(String refreshToken) throws IOException {
+            return AimMatic.renewToken(refreshToken);
+        }
+    };
+
+    // lazy initialization holder of the thread renewing tokens before they expire
+    private static class Scheduler {
+        static final ScheduledExecutorService EXECUTOR = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "aimmatic-token-renewal");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    // a renewal in flight, completed once
+    private static class Flight {
+        final CountDownLatch done = new CountDownLatch(1);
+        AccessToken token;
+        IOException error;
+    }
+
+    private final AppContext appContext;
+    private final Renewer renewer;
+    // guarded by this
+    private Flight flight;
+    // expiry of the token which renewal is scheduled, guarded by this
+    private long scheduledExpiry;
+
+    /**
+     * Create a token renewal for the given app context
+     *
+     * @param appContext app context which store the token
+     */
+    TokenRenewal(AppContext appContext) {
+        this(appContext, ACCOUNT_SERVICE);
+    }
+
+    /**
+     * Create a token renewal with a custom renewal request
+     *
+     * @param appContext app context which store the token
+     * @param renewer    a request to renew the token
+     */
+    TokenRenewal(AppContext appContext, Renewer renewer) {
+        this.appContext = appContext;
+        this.renewer = renewer;
+    }
+
+    /**
+     * Renew a token rejected by the server. If the token has already been renewed by another caller
+     * the current token is returned without a request.
+     *
+     * @param rejected a token rejected by the server
+     * @return a new token or null if the server didn't give one
+     * @throws IOException if the renewal request failed
+     */
+    AccessToken renew(AccessToken rejected) throws IOException {
+        Flight current;
+        boolean owner = false;
+        synchronized (this) {
+            AccessToken stored = appContext.getAccessToken();
+            if (stored != null && stored.getToken() != null && !stored.getToken().equals(rejected.getToken())) {
+                // renewed while this request was in flight
+                return stored;
+            }
+            if (flight == null) {
+                flight = new Flight();
+                owner = true;
+            }
+            current = flight;
+        }
+        if (owner) {
+            try {
+                current.token = renewer.renew(rejected.getRefreshToken());
+                if (current.token != null) {
+                    save(current.token);
+                }
+            } catch (IOException e) {
+                current.error = e;
+            } catch (RuntimeException e) {
+                current.error = new IOException("unable to renew access token", e);
+            } finally {
+                synchronized (this) {
+                    flight = null;
+                }
+                current.done.countDown();
+            }
+        } else {
+            try {
+                current.done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for token renewal");
+            }
+        }
+        if (current.error != null) {
+            throw current.error;
+        }
+        return current.token;
+    }
+
+    /**
+     * Make sure a token is not about to expire. A token expiring within {@link #RENEW_AHEAD} is
+     * renewed now, otherwise its renewal is scheduled ahead of the expiry. A token which expiry is
+     * unknown is returned as is.
+     *
+     * @param accessToken a token about to be used
+     * @return a token to use for the request
+     */
+    AccessToken ensureFresh(AccessToken accessToken) {
+        long expiresAt = accessToken.getExpiresAt();
+        if (expiresAt == 0) {
+            return accessToken;
+        }
+        long delay = expiresAt - RENEW_AHEAD - System.currentTimeMillis();
+        if (delay > 0) {
+            schedule(accessToken, delay);
+            return accessToken;
+        }
+        try {
+            AccessToken renewed = renew(accessToken);
+            return renewed != null ? renewed : accessToken;
+        } catch (IOException e) {
+            // the token may still be valid, a rejected request renew it again
+            return accessToken;
+        }
+    }
+
+    private synchronized void schedule(final AccessToken accessToken, long delay) {
+        if (scheduledExpiry == accessToken.getExpiresAt()) {
+            return;
+        }
+        scheduledExpiry = accessToken.getExpiresAt();
+        Scheduler.EXECUTOR.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    AccessToken renewed = renew(accessToken);
+                    if (renewed != null) {
+                        // schedule the renewal of the new token
+                        ensureFresh(renewed);
+                    }
+                } catch (IOException e) {
+                    // the next request renew it when it's about to expire
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void save(AccessToken accessToken) {
+        if (appContext instanceof AndroidAppContext) {
+            ((AndroidAppContext) appContext).saveAccessToken(accessToken);
+        }
+    }
+
+}
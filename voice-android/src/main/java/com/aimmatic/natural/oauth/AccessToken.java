@@ -16,13 +16,32 @@ package com.aimmatic.natural.oauth;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.aimmatic.natural.core.rest.Json;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import okio.ByteString;
+
 /**
  * A parcelable object contain access token and refresh token
  */
+@JsonAdapter(AccessToken.Adapter.class)
 public class AccessToken implements Parcelable {
 
     private String token;
     private String refreshToken;
+    // lifetime in second given by the server
+    @SerializedName("expires_in")
+    private long expiresIn;
+    // expiry time in millisecond since epoch, 0 if unknown
+    private long expiresAt;
 
     /**
      * Create new AccessToken from the given token and refresh token
@@ -35,9 +54,23 @@ public class AccessToken implements Parcelable {
         this.refreshToken = refreshToken;
     }
 
+    /**
+     * Create new AccessToken with a known expiry time
+     *
+     * @param token        a valid token
+     * @param refreshToken a valid refresh token
+     * @param expiresAt    an expiry time in millisecond since epoch, 0 if unknown
+     */
+    public AccessToken(String token, String refreshToken, long expiresAt) {
+        this.token = token;
+        this.refreshToken = refreshToken;
+        this.expiresAt = expiresAt;
+    }
+
     protected AccessToken(Parcel in) {
         token = in.readString();
         refreshToken = in.readString();
+        expiresAt = in.readLong();
     }
 
     public static final Creator<AccessToken> CREATOR = new Creator<AccessToken>() {
@@ -70,6 +103,47 @@ public class AccessToken implements Parcelable {
         return refreshToken;
     }
 
+    /**
+     * Get the expiry time of the token. It's given by the server lifetime when the token was issued,
+     * or by the exp claim if the token is a JWT.
+     *
+     * @return expiry time in millisecond since epoch, 0 if unknown
+     */
+    public long getExpiresAt() {
+        if (expiresAt == 0) {
+            expiresAt = jwtExpiry(token);
+        }
+        return expiresAt;
+    }
+
+    // turn the lifetime given by the server into an expiry time, call when the token is received
+    void received(long now) {
+        if (expiresIn > 0) {
+            expiresAt = now + expiresIn * 1000;
+        }
+    }
+
+    // read the exp claim of a JWT, 0 if the token is not a JWT
+    static long jwtExpiry(String token) {
+        if (token == null) {
+            return 0;
+        }
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return 0;
+        }
+        ByteString payload = ByteString.decodeBase64(parts[1]);
+        if (payload == null) {
+            return 0;
+        }
+        try {
+            JsonElement exp = new JsonParser().parse(payload.utf8()).getAsJsonObject().get("exp");
+            return exp != null && exp.isJsonPrimitive() ? exp.getAsLong() * 1000 : 0;
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
     @Override
     public int describeContents() {
         return 0;
@@ -79,5 +153,48 @@ public class AccessToken implements Parcelable {
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeString(token);
         dest.writeString(refreshToken);
+        dest.writeLong(getExpiresAt());
+    }
+
+    // read an access token without reflection
+    static class Adapter extends TypeAdapter<AccessToken> {
+
+        @Override
+        public void write(JsonWriter out, AccessToken value) throws IOException {
+            out.beginObject();
+            out.name("token").value(value.token);
+            out.name("refreshToken").value(value.refreshToken);
+            out.name("expires_in").value(value.expiresIn);
+            out.name("expiresAt").value(value.expiresAt);
+            out.endObject();
+        }
+
+        @Override
+        public AccessToken read(JsonReader in) throws IOException {
+            AccessToken accessToken = new AccessToken(null, null);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "token":
+                        accessToken.token = Json.nextString(in);
+                        break;
+                    case "refreshToken":
+                        accessToken.refreshToken = Json.nextString(in);
+                        break;
+                    case "expires_in":
+                        accessToken.expiresIn = Json.nextLong(in);
+                        break;
+                    case "expiresAt":
+                        accessToken.expiresAt = Json.nextLong(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return accessToken;
+        }
+
     }
+
 }
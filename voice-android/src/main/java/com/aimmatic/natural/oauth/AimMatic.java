@@ -13,7 +13,8 @@ limitations under the License.
 
 package com.aimmatic.natural.oauth;
 
-import com.google.gson.Gson;
+import com.aimmatic.natural.core.rest.HttpClients;
+import com.aimmatic.natural.core.rest.Json;
 
 import java.io.IOException;
 
@@ -42,7 +43,7 @@ public class AimMatic {
      * @param callback a callback function to notice when request is success or failure
      */
     public static void fetchToken(String code, String apiKey, final Callback<AccessToken> callback) {
-        OkHttpClient okHttpClient = new OkHttpClient();
+        OkHttpClient okHttpClient = HttpClients.getBaseClient();
         Request request = new Request.Builder()
                 .url(String.format("%s/v1/exchange?code=%s", service, code))
                 .addHeader("Authorization", "AimMatic " + apiKey)
@@ -56,8 +57,8 @@ public class AimMatic {
             @Override
             public void onResponse(Call call, Response response) throws IOException {
                 try {
-                    TokenResponse tokenResponse = new Gson().fromJson(response.body().string(), TokenResponse.class);
-                    callback.onSuccess(tokenResponse.getAccessToken());
+                    TokenResponse tokenResponse = Json.fromJson(response.body(), TokenResponse.class);
+                    callback.onSuccess(tokenResponse.getAccessToken(System.currentTimeMillis()));
                 } catch (Exception e) {
                     if (response.code() != 200) {
                         callback.onError(new Exception("Server reply with status " + response.code()));
@@ -78,14 +79,14 @@ public class AimMatic {
      * @throws IOException
      */
     public static AccessToken renewToken(String refreshToken) throws IOException {
-        OkHttpClient okHttpClient = new OkHttpClient();
+        OkHttpClient okHttpClient = HttpClients.getBaseClient();
         Request request = new Request.Builder()
                 .url(String.format("%s/v1/exchange/refresh", service))
                 .addHeader("Authorization", "Bearer " + refreshToken)
                 .build();
         Response response = okHttpClient.newCall(request).execute();
-        TokenResponse tokenResponse = new Gson().fromJson(response.body().string(), TokenResponse.class);
-        return tokenResponse.getAccessToken();
+        TokenResponse tokenResponse = Json.fromJson(response.body(), TokenResponse.class);
+        return tokenResponse.getAccessToken(System.currentTimeMillis());
     }
 
     /**
@@ -95,7 +96,7 @@ public class AimMatic {
      * @param callback a callback function to notice when request is success or failure
      */
     public static void fetchUserProfile(String token, final Callback<Profile> callback) {
-        OkHttpClient okHttpClient = new OkHttpClient();
+        OkHttpClient okHttpClient = HttpClients.getBaseClient();
         Request request = new Request.Builder()
                 .url(String.format("%s/v1/profile", service))
                 .addHeader("Authorization", "Bearer " + token)
@@ -109,7 +110,7 @@ public class AimMatic {
             @Override
             public void onResponse(Call call, Response response) throws IOException {
                 try {
-                    ProfileResponse profileResponse = new Gson().fromJson(response.body().string(), ProfileResponse.class);
+                    ProfileResponse profileResponse = Json.fromJson(response.body(), ProfileResponse.class);
                     callback.onSuccess(profileResponse.getProfile());
                 } catch (Exception e) {
                     if (response.code() != 200) {
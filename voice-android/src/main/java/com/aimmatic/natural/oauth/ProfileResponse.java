@@ -13,8 +13,19 @@ limitations under the License.
 
 package com.aimmatic.natural.oauth;
 
+import com.aimmatic.natural.core.rest.Json;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
+
+@JsonAdapter(ProfileResponse.AdapterFactory.class)
 class ProfileResponse {
 
     private int Code;
@@ -45,4 +56,53 @@ class ProfileResponse {
     public void setProfile(Profile profile) {
         this.profile = profile;
     }
+
+    // read a profile response without reflection, the profile is read by the adapter of Profile
+    static class AdapterFactory implements TypeAdapterFactory {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (type.getRawType() != ProfileResponse.class) {
+                return null;
+            }
+            final TypeAdapter<Profile> profileAdapter = gson.getAdapter(Profile.class);
+            return (TypeAdapter<T>) new TypeAdapter<ProfileResponse>() {
+                @Override
+                public void write(JsonWriter out, ProfileResponse value) throws IOException {
+                    out.beginObject();
+                    out.name("Code").value(value.Code);
+                    out.name("message").value(value.message);
+                    out.name("data");
+                    profileAdapter.write(out, value.profile);
+                    out.endObject();
+                }
+
+                @Override
+                public ProfileResponse read(JsonReader in) throws IOException {
+                    ProfileResponse response = new ProfileResponse();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "Code":
+                                response.Code = Json.nextInt(in);
+                                break;
+                            case "message":
+                                response.message = Json.nextString(in);
+                                break;
+                            case "data":
+                                response.profile = profileAdapter.read(in);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return response;
+                }
+            };
+        }
+
+    }
+
 }
@@ -13,8 +13,16 @@ limitations under the License.
 
 package com.aimmatic.natural.oauth;
 
+import com.aimmatic.natural.core.rest.Json;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
+
+@JsonAdapter(TokenResponse.Adapter.class)
 class TokenResponse {
 
     private int Code;
@@ -42,7 +50,56 @@ class TokenResponse {
         return accessToken;
     }
 
+    // get the access token with its expiry time resolved from the time it was received
+    AccessToken getAccessToken(long receivedAt) {
+        if (accessToken != null) {
+            accessToken.received(receivedAt);
+        }
+        return accessToken;
+    }
+
     public void setAccessToken(AccessToken accessToken) {
         this.accessToken = accessToken;
     }
+
+    // read a token response without reflection
+    static class Adapter extends TypeAdapter<TokenResponse> {
+
+        private final TypeAdapter<AccessToken> accessTokenAdapter = new AccessToken.Adapter().nullSafe();
+
+        @Override
+        public void write(JsonWriter out, TokenResponse value) throws IOException {
+            out.beginObject();
+            out.name("Code").value(value.Code);
+            out.name("message").value(value.message);
+            out.name("data");
+            accessTokenAdapter.write(out, value.accessToken);
+            out.endObject();
+        }
+
+        @Override
+        public TokenResponse read(JsonReader in) throws IOException {
+            TokenResponse response = new TokenResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "Code":
+                        response.Code = Json.nextInt(in);
+                        break;
+                    case "message":
+                        response.message = Json.nextString(in);
+                        break;
+                    case "data":
+                        response.accessToken = accessTokenAdapter.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+
+    }
+
 }
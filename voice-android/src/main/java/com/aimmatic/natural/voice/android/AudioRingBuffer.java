@@ -0,0 +1,212 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.android;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free single producer, single consumer ring of preallocated PCM frames. The capture thread
+ * fill frames from {@link android.media.AudioRecord} and the encoder thread drain them. All frames are
+ * allocated once as direct buffer in native byte order so the audio record can write into them and
+ * the consumer can read 16 bit samples through a short view without decoding the bytes. Neither side
+ * allocate memory while recording. When the ring is full the producer never wait, the frame is read
+ * into a scratch frame and dropped instead.
+ */
+class AudioRingBuffer {
+
+    private final ByteBuffer[] frames;
+    private final ShortBuffer[] samples;
+    private final int[] sizes;
+    private final long[] timestamps;
+    private final ByteBuffer overrunFrame;
+
+    // next frame to be written by the producer
+    private final AtomicLong head = new AtomicLong();
+    // next frame to be read by the consumer
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile Thread consumer;
+    private volatile int overrunCount;
+    // only access by producer thread
+    private boolean overrun;
+
+    /**
+     * Create a ring buffer
+     *
+     * @param depth     a number of frame the ring can hold
+     * @param frameSize a size of each frame in byte
+     */
+    AudioRingBuffer(int depth, int frameSize) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("depth must be greater than 0");
+        }
+        frames = new ByteBuffer[depth];
+        samples = new ShortBuffer[depth];
+        for (int i = 0; i < depth; i++) {
+            frames[i] = newFrame(frameSize);
+            samples[i] = frames[i].asShortBuffer();
+        }
+        sizes = new int[depth];
+        timestamps = new long[depth];
+        overrunFrame = newFrame(frameSize);
+    }
+
+    /**
+     * Allocate a frame that can be fill by {@link android.media.AudioRecord#read(ByteBuffer, int)}
+     *
+     * @param frameSize a size of frame in byte
+     * @return a direct buffer in native byte order
+     */
+    static ByteBuffer newFrame(int frameSize) {
+        return ByteBuffer.allocateDirect(frameSize).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Get a frame for the producer to write into. If the ring is full, a scratch frame is return
+     * and its data will be dropped on {@link #commitWrite(int, long)}.
+     *
+     * @return a frame to be written, its position is 0 and limit is its capacity
+     */
+    ByteBuffer writeFrame() {
+        long h = head.get();
+        overrun = h - tail.get() >= frames.length;
+        ByteBuffer frame = overrun ? overrunFrame : frames[index(h)];
+        frame.clear();
+        return frame;
+    }
+
+    /**
+     * Publish the frame return by {@link #writeFrame()} to the consumer
+     *
+     * @param size      a size of data in the frame
+     * @param timestamp a time in millisecond the frame was captured
+     */
+    void commitWrite(int size, long timestamp) {
+        if (overrun) {
+            overrunCount++;
+            return;
+        }
+        long h = head.get();
+        int i = index(h);
+        sizes[i] = size;
+        timestamps[i] = timestamp;
+        head.lazySet(h + 1);
+        Thread c = consumer;
+        if (c != null) {
+            LockSupport.unpark(c);
+        }
+    }
+
+    /**
+     * Check if there is no frame available for the consumer
+     *
+     * @return true if ring is empty
+     */
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /**
+     * Park the consumer thread until the producer publish a frame or timeout elapsed. It may return
+     * spuriously, caller must check {@link #isEmpty()} again.
+     *
+     * @param timeoutMillis maximum time to wait in millisecond
+     */
+    void awaitFrame(long timeoutMillis) {
+        consumer = Thread.currentThread();
+        if (isEmpty()) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        }
+    }
+
+    /**
+     * Wake up the consumer if it's waiting for a frame
+     */
+    void wakeUp() {
+        Thread c = consumer;
+        if (c != null) {
+            LockSupport.unpark(c);
+        }
+    }
+
+    /**
+     * Get the oldest frame available for the consumer. Caller must check {@link #isEmpty()} first.
+     *
+     * @return the oldest frame, its position is 0 and limit is the size of data
+     */
+    ByteBuffer readFrame() {
+        int i = index(tail.get());
+        ByteBuffer frame = frames[i];
+        frame.limit(sizes[i]);
+        frame.position(0);
+        return frame;
+    }
+
+    /**
+     * Get the 16 bit samples of the oldest frame. Caller must check {@link #isEmpty()} first.
+     *
+     * @return a short view of the oldest frame, its position is 0 and limit is the number of sample
+     */
+    ShortBuffer readSamples() {
+        int i = index(tail.get());
+        ShortBuffer view = samples[i];
+        view.limit(sizes[i] / 2);
+        view.position(0);
+        return view;
+    }
+
+    /**
+     * Get a size of data of the oldest frame
+     *
+     * @return size in byte
+     */
+    int readSize() {
+        return sizes[index(tail.get())];
+    }
+
+    /**
+     * Get a time that the oldest frame was captured
+     *
+     * @return time in millisecond
+     */
+    long readTimestamp() {
+        return timestamps[index(tail.get())];
+    }
+
+    /**
+     * Release the oldest frame back to the producer
+     */
+    void commitRead() {
+        tail.lazySet(tail.get() + 1);
+    }
+
+    /**
+     * Get a number of frame dropped because the consumer was too slow
+     *
+     * @return number of dropped frame
+     */
+    int getOverrunCount() {
+        return overrunCount;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % frames.length);
+    }
+
+}
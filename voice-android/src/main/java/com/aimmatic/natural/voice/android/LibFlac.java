@@ -13,6 +13,8 @@ limitations under the License.
 
 package com.aimmatic.natural.voice.android;
 
+import java.nio.ByteBuffer;
+
 /**
  * LibFlac java native jni interface to convert raw wav pcm 16 bit binary into flac format.
  */
@@ -38,7 +40,9 @@ public class LibFlac {
      */
     public interface EncoderCallback {
         /**
-         * call when flac successfully encode wav to a binary flac.
+         * call when flac successfully encode wav to a binary flac. The data array is owned by the encoder
+         * and reused for the next frame, it's only valid until this method return. Copy it if it's needed
+         * afterward.
          *
          * @param data  flac binary file data
          * @param sized size of data in byte
@@ -61,10 +65,27 @@ public class LibFlac {
      * @throws IllegalStateException throw when configuration is not valid
      */
     public void initialize(int sampleRate, int channel, int bps, int compressLevel) throws IllegalStateException {
+        initialize(sampleRate, channel, bps, compressLevel, true, 0);
+    }
+
+    /**
+     * initialize the flac lib.
+     *
+     * @param sampleRate    sample rate of audio
+     * @param channel       channel of audio like digital or mono
+     * @param bps           bit per second. Usually 16
+     * @param compressLevel a compression level for flac
+     * @param verify        true to decode each encoded frame and compare it with the input, it's
+     *                      roughly double the encode time
+     * @param blockSize     a number of sample per flac frame, 0 to use the block size of the compression level
+     * @throws IllegalStateException throw when configuration is not valid
+     */
+    public synchronized void initialize(int sampleRate, int channel, int bps, int compressLevel,
+                                        boolean verify, int blockSize) throws IllegalStateException {
         this.channel = channel;
         this.cPointer = this.init();
         state = STATE_INITIALIZED;
-        if (setMetadata(cPointer, sampleRate, channel, bps, compressLevel) == 0) {
+        if (setMetadata(cPointer, sampleRate, channel, bps, compressLevel, verify, blockSize) == 0) {
             throw new IllegalStateException("unable to set wave format metadata.");
         }
     }
@@ -79,18 +100,44 @@ public class LibFlac {
     }
 
     /**
-     * Send a wav PCM 16 bit raw data
+     * Send a wav PCM 16 bit raw data. There is no limit on the size, a large buffer is encoded in
+     * chunks by native code.
      *
      * @param buffer a binary of raw wav pcm
+     * @param size   size of data in byte
      */
-    public void encode(byte[] buffer, int size) {
+    public synchronized void encode(byte[] buffer, int size) {
+        if (size < 0 || size > buffer.length) {
+            throw new IllegalArgumentException("size must be between 0 and buffer length");
+        }
         if (!this.encode(cPointer, channel, buffer, size)) {
-            throw new IllegalArgumentException("buffer encode byte array must be smaller or equal 1024 byte");
+            throw new IllegalStateException("unable to encode pcm data");
+        }
+    }
+
+    /**
+     * Send a wav PCM 16 bit raw data in native byte order from a direct buffer. The native code read
+     * the buffer in place without any copy, such as a buffer filled by
+     * {@link android.media.AudioRecord#read(ByteBuffer, int)}.
+     *
+     * @param buffer a direct buffer of raw wav pcm from position 0
+     * @param size   size of data in byte
+     */
+    public synchronized void encode(ByteBuffer buffer, int size) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("buffer must be a direct buffer");
+        }
+        if (size < 0 || size > buffer.capacity()) {
+            throw new IllegalArgumentException("size must be between 0 and buffer capacity");
+        }
+        if (!this.encodeDirect(cPointer, channel, buffer, size)) {
+            throw new IllegalStateException("unable to encode pcm data");
         }
     }
 
     /**
-     * Called by native c/c++ code when encode to flac is done.
+     * Called by native c/c++ code when encode to flac is done. The data array is reused by native
+     * code for every frame.
      *
      * @param data flac binary data
      * @param size size of data in byte
@@ -104,16 +151,17 @@ public class LibFlac {
     /**
      * free native resource
      */
-    public void release() {
+    public synchronized void release() {
         if (state != STATE_UNINITIALIZED) {
             release(cPointer);
+            state = STATE_UNINITIALIZED;
         }
     }
 
     /**
      * mark encode as done. Flac lib will send addition data to finalize the flac binary data.
      */
-    public void finish() {
+    public synchronized void finish() {
         this.finish(cPointer);
     }
 
@@ -147,6 +195,12 @@ public class LibFlac {
      */
     private native boolean encode(long cPointer, int channel, byte[] in, int size);
 
+    /*
+     * encode the wav to flac using native code by passing a direct buffer, the native code read
+     * the buffer address directly.
+     */
+    private native boolean encodeDirect(long cPointer, int channel, ByteBuffer in, int size);
+
     /*
      * initialize flac native resource
      */
@@ -155,6 +209,7 @@ public class LibFlac {
     /*
      * set metadata of current audio wave
      */
-    private native int setMetadata(long cPointer, int sampleRate, int channel, int bps, int compressLevel);
+    private native int setMetadata(long cPointer, int sampleRate, int channel, int bps, int compressLevel,
+                                   boolean verify, int blockSize);
 
 }
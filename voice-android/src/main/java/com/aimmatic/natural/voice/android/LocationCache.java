@@ -0,0 +1,189 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.android;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.content.ContextCompat;
+import android.util.Log;
+
+/**
+ * Keep a recent location of the device for the upload metadata. The cache is seeded with the last
+ * known location of every enabled provider then refreshed by the passive provider, so it only
+ * receive the fixes already requested by other apps and cost almost no power. If there is no fix at
+ * all, a single update is requested from the network provider. Reading the location never block and
+ * never wait for a fix, the location manager is only called on the main looper which also receive
+ * the updates.
+ */
+class LocationCache implements LocationListener {
+
+    private static final String TAG = "LocationCache";
+
+    // minimum time in millisecond between passive updates
+    private static final long MIN_UPDATE_INTERVAL = 60 * 1000;
+    // minimum distance in meter between passive updates
+    private static final float MIN_UPDATE_DISTANCE = 50;
+    // time in millisecond before trying to register again when the permission was missing
+    private static final long RETRY_INTERVAL = 60 * 1000;
+
+    private final Context ctx;
+    // handler of the looper receiving the updates, a registration retry is posted to it
+    private final Handler handler;
+    private volatile Location location;
+    private volatile boolean registered;
+    // true once stopped, the cache is never started again
+    private boolean stopped;
+    // guarded by this
+    private long lastAttempt = -RETRY_INTERVAL;
+    private boolean retryPending;
+
+    private final Runnable retry = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (LocationCache.this) {
+                retryPending = false;
+            }
+            start();
+        }
+    };
+
+    /**
+     * Create a location cache, nothing is registered until it's started
+     *
+     * @param ctx android context
+     */
+    LocationCache(Context ctx) {
+        this.ctx = ctx;
+        this.handler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Seed the cache and listen to passive updates. It does nothing if the location permission
+     * is not granted, {@link #get()} try again later.
+     */
+    synchronized void start() {
+        if (registered || stopped) {
+            return;
+        }
+        lastAttempt = SystemClock.elapsedRealtime();
+        int permission = ContextCompat.checkSelfPermission(ctx, Manifest.permission.ACCESS_FINE_LOCATION);
+        if (permission != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        LocationManager lm = (LocationManager) ctx.getSystemService(Context.LOCATION_SERVICE);
+        if (lm == null) {
+            return;
+        }
+        try {
+            for (String provider : lm.getProviders(true)) {
+                update(lm.getLastKnownLocation(provider));
+            }
+            lm.requestLocationUpdates(LocationManager.PASSIVE_PROVIDER, MIN_UPDATE_INTERVAL, MIN_UPDATE_DISTANCE, this, handler.getLooper());
+            if (location == null && lm.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
+                lm.requestSingleUpdate(LocationManager.NETWORK_PROVIDER, this, handler.getLooper());
+            }
+            registered = true;
+        } catch (SecurityException | IllegalArgumentException e) {
+            Log.d(TAG, "unable to listen to location update due to " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Stop listening to location updates for good, the cached location is kept
+     */
+    synchronized void stop() {
+        stopped = true;
+        handler.removeCallbacks(retry);
+        if (!registered) {
+            return;
+        }
+        LocationManager lm = (LocationManager) ctx.getSystemService(Context.LOCATION_SERVICE);
+        if (lm != null) {
+            lm.removeUpdates(this);
+        }
+        registered = false;
+    }
+
+    /**
+     * Get the most recent location. If the cache is not registered yet, a new attempt is posted to
+     * the main looper and the current location is returned without waiting for it.
+     *
+     * @return a location or null if there is no fix yet
+     */
+    Location get() {
+        if (!registered) {
+            retryStart();
+        }
+        return location;
+    }
+
+    // the permission may have been granted since the last attempt, the caller may be the encoder
+    // thread so it never call the location manager itself
+    private synchronized void retryStart() {
+        if (stopped || retryPending || SystemClock.elapsedRealtime() - lastAttempt < RETRY_INTERVAL) {
+            return;
+        }
+        retryPending = true;
+        handler.post(retry);
+    }
+
+    // keep the newest fix
+    private synchronized void update(Location newLocation) {
+        if (newLocation == null) {
+            return;
+        }
+        Location current = location;
+        if (current == null || newLocation.getTime() >= current.getTime()) {
+            location = newLocation;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onLocationChanged(Location location) {
+        update(location);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStatusChanged(String provider, int status, Bundle extras) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onProviderEnabled(String provider) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onProviderDisabled(String provider) {
+    }
+
+}
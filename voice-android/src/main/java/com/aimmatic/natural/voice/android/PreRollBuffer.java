@@ -0,0 +1,111 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.android;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A fixed size circular buffer that keep the most recent PCM frames captured before the voice is
+ * detected. Frames are copied into a preallocated memory and the oldest frame is overwritten when
+ * the buffer is full. This class is not thread safe, it's only use by the encoder thread.
+ */
+class PreRollBuffer {
+
+    private final ByteBuffer[] frames;
+    private final int[] sizes;
+    // index of the oldest frame
+    private int start;
+    private int count;
+
+    /**
+     * Create pre-roll buffer that can hold at least the given number of byte
+     *
+     * @param capacity  a minimum number of byte to keep
+     * @param frameSize a size of each frame in byte
+     */
+    PreRollBuffer(int capacity, int frameSize) {
+        int depth = (capacity + frameSize - 1) / frameSize;
+        frames = new ByteBuffer[depth];
+        for (int i = 0; i < depth; i++) {
+            frames[i] = AudioRingBuffer.newFrame(frameSize);
+        }
+        sizes = new int[depth];
+    }
+
+    /**
+     * Copy a frame into the buffer, the oldest frame is dropped if the buffer is full
+     *
+     * @param buffer a PCM data from position 0
+     * @param size   size of data in byte
+     */
+    void write(ByteBuffer buffer, int size) {
+        int i;
+        if (count < frames.length) {
+            i = (start + count) % frames.length;
+            count++;
+        } else {
+            i = start;
+            start = (start + 1) % frames.length;
+        }
+        ByteBuffer frame = frames[i];
+        frame.clear();
+        buffer.limit(size);
+        buffer.position(0);
+        frame.put(buffer);
+        buffer.position(0);
+        sizes[i] = size;
+    }
+
+    /**
+     * Get a number of frame in the buffer
+     *
+     * @return number of frame
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * Get a frame in chronological order
+     *
+     * @param index an index between 0 and {@link #count()}, 0 is the oldest frame
+     * @return a frame, its position is 0 and limit is the size of data
+     */
+    ByteBuffer frame(int index) {
+        int i = (start + index) % frames.length;
+        ByteBuffer frame = frames[i];
+        frame.limit(sizes[i]);
+        frame.position(0);
+        return frame;
+    }
+
+    /**
+     * Get a size of data in a frame in chronological order
+     *
+     * @param index an index between 0 and {@link #count()}, 0 is the oldest frame
+     * @return size of data in byte
+     */
+    int size(int index) {
+        return sizes[(start + index) % frames.length];
+    }
+
+    /**
+     * Remove all frame, the memory is kept to be reused
+     */
+    void clear() {
+        start = 0;
+        count = 0;
+    }
+
+}
@@ -13,6 +13,8 @@ limitations under the License.
 
 package com.aimmatic.natural.voice.android;
 
+import com.aimmatic.natural.voice.detector.EnergyVoiceActivityDetector;
+import com.aimmatic.natural.voice.detector.VoiceActivityDetector;
 import com.aimmatic.natural.voice.encoder.Encoder;
 import com.aimmatic.natural.voice.encoder.FlacEncoder;
 import com.aimmatic.natural.voice.rest.Language;
@@ -44,23 +46,32 @@ public class RecordStrategy {
     public static final byte POLICY_USER_CHOICE = 3;
 
     private Encoder encoder;
+    private VoiceActivityDetector voiceActivityDetector;
     private int[] sampleRatesCandidate;
     private int speechTimeout;
     private int maxRecordDuration;
     private byte speechTimeoutPolicies;
     private byte maxRecordDurationPolicies;
     private Language language;
+    private int bufferDepth;
+    private int preRollDuration;
+    private boolean streamingUpload;
+    private int memoryBufferSize;
 
     /**
      * Create record strategy
      */
     public RecordStrategy() {
         encoder = new FlacEncoder();
+        voiceActivityDetector = new EnergyVoiceActivityDetector();
         sampleRatesCandidate = VoiceRecorder.SAMPLE_RATE_CANDIDATES;
         speechTimeout = VoiceRecorder.SPEECH_TIMEOUT_MILLIS;
         speechTimeoutPolicies = POLICY_USER_CHOICE;
         maxRecordDuration = 1 * 29 * 1000;  // 59s in millisecond
         maxRecordDurationPolicies = POLICY_USER_CHOICE;
+        bufferDepth = VoiceRecorder.BUFFER_DEPTH;
+        preRollDuration = VoiceRecorder.PRE_ROLL_MILLIS;
+        memoryBufferSize = RecordingBuffer.DEFAULT_MEMORY_SIZE;
     }
 
     /**
@@ -77,6 +88,19 @@ public class RecordStrategy {
         return this;
     }
 
+    /**
+     * Set a voice activity detector to decide when the user start and stop speaking
+     *
+     * @param voiceActivityDetector a class implement VoiceActivityDetector
+     * @return a record strategy object
+     * @see {@link com.aimmatic.natural.voice.detector.VoiceActivityDetector}
+     * @see {@link com.aimmatic.natural.voice.detector.EnergyVoiceActivityDetector}
+     */
+    public RecordStrategy setVoiceActivityDetector(VoiceActivityDetector voiceActivityDetector) {
+        this.voiceActivityDetector = voiceActivityDetector;
+        return this;
+    }
+
     /**
      * Set speech timeout in millisecond. This duration use to measure and terminate or stop the on going
      * recording after we don't hear the voice from user
@@ -145,6 +169,73 @@ public class RecordStrategy {
         return this;
     }
 
+    /**
+     * Set a number of audio record buffer that can be queued while the encoder is busy. The audio record
+     * is read on its own thread and never wait for the encoder, if the queue is full the newest buffer
+     * is dropped. By default, it set to 32 buffers. If you set value smaller than 2,
+     * the {@link InvalidRecordStrategy} is raised
+     *
+     * @param bufferDepth a number of buffer
+     * @return a record strategy object
+     */
+    public RecordStrategy setBufferDepth(int bufferDepth) throws InvalidRecordStrategy {
+        if (bufferDepth < 2) {
+            throw new InvalidRecordStrategy("Buffer depth out of range. Depth must be at least 2");
+        }
+        this.bufferDepth = bufferDepth;
+        return this;
+    }
+
+    /**
+     * Set a duration of audio in millisecond kept before the voice is detected. When the recording start,
+     * this audio is encoded ahead of the audio that trigger the recording so the beginning of the speech
+     * is not clipped. By default, it set to 300ms. Set it to 0 to disable pre-roll. If you set value
+     * longer than 2 second or negative, the {@link InvalidRecordStrategy} is raised
+     *
+     * @param preRollDuration a duration in millisecond
+     * @return a record strategy object
+     */
+    public RecordStrategy setPreRollDuration(int preRollDuration) throws InvalidRecordStrategy {
+        if (preRollDuration < 0 || preRollDuration > 2000) {
+            throw new InvalidRecordStrategy("Pre-roll duration out of range. Duration can be set between 0s to 2s");
+        }
+        this.preRollDuration = preRollDuration;
+        return this;
+    }
+
+    /**
+     * Set whether the encoded audio is uploaded while recording. In streaming mode, the upload start
+     * as soon as the voice is detected and the encoded data is sent as it's produced, the result come
+     * back shortly after the recording end. The audio is still recorded locally, if the stream
+     * failed the recorded audio is sent after the recording end. By default, it's disabled.
+     *
+     * @param streamingUpload true to upload while recording
+     * @return a record strategy object
+     */
+    public RecordStrategy setStreamingUpload(boolean streamingUpload) {
+        this.streamingUpload = streamingUpload;
+        return this;
+    }
+
+    /**
+     * Set a maximum size in byte of encoded audio kept in memory. A recording smaller than this size
+     * wait for the upload batch window in memory, is uploaded from memory and only written to the disk if
+     * the upload must be retried, a longer recording is written to the cache. By default, it set to 512KB
+     * which hold about 16 seconds of 16 bit mono wave audio at 16kHz, FLAC hold about twice longer. Set it
+     * to 0 to always write to the cache. If you set negative value, the
+     * {@link InvalidRecordStrategy} is raised
+     *
+     * @param memoryBufferSize a size in byte
+     * @return a record strategy object
+     */
+    public RecordStrategy setMemoryBufferSize(int memoryBufferSize) throws InvalidRecordStrategy {
+        if (memoryBufferSize < 0) {
+            throw new InvalidRecordStrategy("Memory buffer size out of range. Size must not be negative");
+        }
+        this.memoryBufferSize = memoryBufferSize;
+        return this;
+    }
+
     /**
      * Get audio encoder
      *
@@ -155,6 +246,16 @@ public class RecordStrategy {
         return encoder;
     }
 
+    /**
+     * Get voice activity detector
+     *
+     * @return current VoiceActivityDetector
+     * @see {@link VoiceActivityDetector}
+     */
+    public VoiceActivityDetector getVoiceActivityDetector() {
+        return voiceActivityDetector;
+    }
+
     /**
      * Get a list of sample rate
      *
@@ -208,4 +309,40 @@ public class RecordStrategy {
     public Language getLanguage() {
         return language;
     }
+
+    /**
+     * Get a number of audio record buffer that can be queued while the encoder is busy
+     *
+     * @return current buffer depth
+     */
+    public int getBufferDepth() {
+        return bufferDepth;
+    }
+
+    /**
+     * Get a duration of audio kept before the voice is detected
+     *
+     * @return current pre-roll duration in millisecond
+     */
+    public int getPreRollDuration() {
+        return preRollDuration;
+    }
+
+    /**
+     * Check whether the encoded audio is uploaded while recording
+     *
+     * @return true if streaming upload is enabled
+     */
+    public boolean isStreamingUpload() {
+        return streamingUpload;
+    }
+
+    /**
+     * Get a maximum size of encoded audio kept in memory
+     *
+     * @return current memory buffer size in byte
+     */
+    public int getMemoryBufferSize() {
+        return memoryBufferSize;
+    }
 }
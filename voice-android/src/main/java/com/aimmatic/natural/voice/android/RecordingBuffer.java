@@ -0,0 +1,259 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.android;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * Hold the encoded audio of one recording. The audio is kept in memory in fixed size segments taken
+ * from a process-wide pool, so a short recording never touch the disk and is uploaded straight from
+ * memory. When the audio grow past the memory size, the segments are written to a spill file and the
+ * rest of the recording is appended to it through a buffered stream. The audio can also be written
+ * to the file on demand, e.g. when the upload must be retried later.
+ * <p>
+ * The buffer is written by the encoder thread then handed over to the upload, every method is
+ * synchronized so the data is visible to the thread that send it.
+ */
+class RecordingBuffer {
+
+    // default maximum size of audio kept in memory
+    static final int DEFAULT_MEMORY_SIZE = 512 * 1024;
+    // size of memory segment and of the spill file stream buffer
+    static final int SEGMENT_SIZE = 16 * 1024;
+    // maximum number of free segments kept for the next recordings
+    private static final int MAX_POOLED_SEGMENTS = 64;
+    private static final ArrayDeque<byte[]> pool = new ArrayDeque<>();
+
+    private final File spillFile;
+    private final int memorySize;
+    private final ArrayList<byte[]> segments = new ArrayList<>();
+    private long size;
+    // open while the recording is appended to the spill file
+    private OutputStream out;
+    // true once the audio is in the spill file instead of memory
+    private boolean spilled;
+    private boolean released;
+
+    /**
+     * Create an empty buffer
+     *
+     * @param spillFile  a file use when the audio doesn't fit in memory, it's created only when needed
+     * @param memorySize a maximum size of audio in byte kept in memory, 0 to always use the file
+     */
+    RecordingBuffer(File spillFile, int memorySize) {
+        this.spillFile = spillFile;
+        this.memorySize = memorySize;
+    }
+
+    /**
+     * Append encoded audio
+     *
+     * @param data   an audio data
+     * @param offset an offset in data
+     * @param length number of byte to append
+     * @throws IOException if the audio can't be written to the spill file
+     */
+    synchronized void write(byte[] data, int offset, int length) throws IOException {
+        checkNotReleased();
+        if (!spilled && size + length > memorySize) {
+            spill();
+        }
+        if (spilled) {
+            if (out == null) {
+                throw new IOException("recording is already closed");
+            }
+            out.write(data, offset, length);
+            size += length;
+            return;
+        }
+        while (length > 0) {
+            int position = (int) (size % SEGMENT_SIZE);
+            if (position == 0) {
+                segments.add(obtainSegment());
+            }
+            int count = Math.min(length, SEGMENT_SIZE - position);
+            System.arraycopy(data, offset, segments.get(segments.size() - 1), position, count);
+            offset += count;
+            length -= count;
+            size += count;
+        }
+    }
+
+    /**
+     * End the recording, the spill file is flushed if the audio is in the file
+     *
+     * @throws IOException if the spill file can't be written
+     */
+    synchronized void close() throws IOException {
+        if (out != null) {
+            OutputStream stream = out;
+            out = null;
+            stream.close();
+        }
+    }
+
+    /**
+     * Check whether the audio is still in memory
+     *
+     * @return true if the audio has not been written to the spill file
+     */
+    synchronized boolean isInMemory() {
+        return !spilled;
+    }
+
+    /**
+     * Get size of the audio
+     *
+     * @return size in byte
+     */
+    synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Get the file name use by the audio, the file may not exist
+     *
+     * @return a file name
+     */
+    String getName() {
+        return spillFile.getName();
+    }
+
+    /**
+     * Create a request body that send the audio from memory or from the spill file. The buffer
+     * must not be released until the request completed.
+     *
+     * @param mediaType a content type of the audio
+     * @return a request body
+     * @throws IOException if the buffer has been released
+     */
+    synchronized RequestBody requestBody(final MediaType mediaType) throws IOException {
+        checkNotReleased();
+        if (spilled) {
+            return RequestBody.create(mediaType, spillFile);
+        }
+        final byte[][] data = segments.toArray(new byte[segments.size()][]);
+        final long length = size;
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return mediaType;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                long remaining = length;
+                for (byte[] segment : data) {
+                    int count = (int) Math.min(SEGMENT_SIZE, remaining);
+                    sink.write(segment, 0, count);
+                    remaining -= count;
+                }
+            }
+        };
+    }
+
+    /**
+     * Make sure the audio is in the spill file and return it. The caller may move the file, the
+     * buffer no longer use it after this call.
+     *
+     * @return the file of the audio
+     * @throws IOException if the file can't be written or the buffer has been released
+     */
+    synchronized File toFile() throws IOException {
+        checkNotReleased();
+        if (!spilled) {
+            spill();
+        }
+        close();
+        return spillFile;
+    }
+
+    /**
+     * Free the memory and delete the spill file if it's still in place. The buffer can't be used
+     * after this call.
+     */
+    synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        recycleSegments();
+        try {
+            close();
+        } catch (IOException ignored) {
+        }
+        spillFile.delete();
+    }
+
+    // move the segments into the spill file and keep the stream open for the next writes
+    private void spill() throws IOException {
+        OutputStream stream = new BufferedOutputStream(new FileOutputStream(spillFile), SEGMENT_SIZE);
+        try {
+            long remaining = size;
+            for (byte[] segment : segments) {
+                int count = (int) Math.min(SEGMENT_SIZE, remaining);
+                stream.write(segment, 0, count);
+                remaining -= count;
+            }
+        } catch (IOException e) {
+            stream.close();
+            spillFile.delete();
+            throw e;
+        }
+        out = stream;
+        spilled = true;
+        recycleSegments();
+    }
+
+    private void checkNotReleased() throws IOException {
+        if (released) {
+            throw new IOException("recording has been released");
+        }
+    }
+
+    private void recycleSegments() {
+        synchronized (pool) {
+            for (byte[] segment : segments) {
+                if (pool.size() >= MAX_POOLED_SEGMENTS) {
+                    break;
+                }
+                pool.push(segment);
+            }
+        }
+        segments.clear();
+    }
+
+    private static byte[] obtainSegment() {
+        synchronized (pool) {
+            byte[] segment = pool.poll();
+            return segment != null ? segment : new byte[SEGMENT_SIZE];
+        }
+    }
+
+}
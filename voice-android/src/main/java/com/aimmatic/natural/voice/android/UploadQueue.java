@@ -0,0 +1,435 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.android;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * A durable queue of recorded audio waiting to be uploaded. Each entry own one audio file in the
+ * queue directory and the list of entries is kept in an append-only journal. An entry is added with
+ * an ADD line written before its audio file is moved in, and removed by deleting its audio before
+ * writing a DEL line. An entry which audio is missing is dropped and an audio found without entry
+ * is adopted, so a crash at any point never lose an audio that has been queued. A RTY line record
+ * the number of failed attempts and the time of the next one, so the backoff continue after the app
+ * restart. A SES line record the resumable upload session of an entry and its chunk size so its
+ * upload can continue after the app restart. The journal is replayed when the queue is first used
+ * and compacted when it contain mostly removed entries. This class is thread safe.
+ */
+class UploadQueue {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String JOURNAL = "journal";
+    private static final String JOURNAL_TMP = "journal.tmp";
+    private static final String AUDIO_EXTENSION = ".audio";
+    private static final String ADD = "ADD";
+    private static final String DEL = "DEL";
+    private static final String SES = "SES";
+    private static final String RTY = "RTY";
+    // compact the journal when it contain more removed entries than this
+    private static final int COMPACT_THRESHOLD = 32;
+
+    /**
+     * An audio waiting to be uploaded with its request parameters
+     */
+    static class Entry {
+
+        final String id;
+        final File file;
+        final long createdAt;
+        final String mediaType;
+        final String language;
+        final double lat;
+        final double lng;
+        final int sampleRate;
+        // retry state, set under the queue lock and read by the scheduler thread
+        int attempts;
+        long nextAttemptAt;
+        // id of the resumable upload session, null if none has been created
+        volatile String uploadSession;
+        // chunk size of the upload session, it's set before the session id
+        volatile int uploadChunkSize;
+
+        Entry(String id, File file, long createdAt, String mediaType, String language, double lat, double lng, int sampleRate) {
+            this.id = id;
+            this.file = file;
+            this.createdAt = createdAt;
+            this.mediaType = mediaType;
+            this.language = language;
+            this.lat = lat;
+            this.lng = lng;
+            this.sampleRate = sampleRate;
+        }
+
+    }
+
+    private final File dir;
+    // pending entries in the order they were added
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private boolean loaded;
+    private int removedCount;
+
+    /**
+     * Create a queue stored in the given directory. Nothing is read until the queue is used.
+     *
+     * @param dir a directory own by the queue
+     */
+    UploadQueue(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Move an audio file into the queue
+     *
+     * @param audio      a recorded audio file, it's moved into the queue directory
+     * @param mediaType  a content type of the audio
+     * @param language   a BCP-47 code of the speech language
+     * @param lat        a latitude of the device
+     * @param lng        a longitude of the device
+     * @param sampleRate a sample rate of the audio
+     * @return the queued entry
+     * @throws IOException if the audio can't be moved or the journal can't be written
+     */
+    synchronized Entry add(File audio, String mediaType, String language, double lat, double lng, int sampleRate) throws IOException {
+        return add(audio, mediaType, language, lat, lng, sampleRate, 0, 0);
+    }
+
+    /**
+     * Move an audio file that already failed to be sent into the queue
+     *
+     * @param audio         a recorded audio file, it's moved into the queue directory
+     * @param mediaType     a content type of the audio
+     * @param language      a BCP-47 code of the speech language
+     * @param lat           a latitude of the device
+     * @param lng           a longitude of the device
+     * @param sampleRate    a sample rate of the audio
+     * @param attempts      a number of attempts already made
+     * @param nextAttemptAt a time in millisecond of the next attempt
+     * @return the queued entry
+     * @throws IOException if the audio can't be moved or the journal can't be written
+     */
+    synchronized Entry add(File audio, String mediaType, String language, double lat, double lng, int sampleRate,
+                           int attempts, long nextAttemptAt) throws IOException {
+        load();
+        String id = UUID.randomUUID().toString();
+        File file = new File(dir, id + AUDIO_EXTENSION);
+        Entry entry = new Entry(id, file, System.currentTimeMillis(), mediaType, language, lat, lng, sampleRate);
+        // the ADD line must be durable before the audio is moved in, an audio without entry has lost
+        // its request parameters
+        String lines = addLine(entry);
+        if (attempts > 0) {
+            lines += retryLine(id, attempts, nextAttemptAt);
+        }
+        appendJournal(lines);
+        if (!audio.renameTo(file)) {
+            try {
+                appendJournal(DEL + "\t" + id + "\n");
+                removedCount++;
+            } catch (IOException e) {
+                // the entry will be dropped on next load because it has no audio
+            }
+            throw new IOException("unable to move " + audio + " into upload queue");
+        }
+        entry.attempts = attempts;
+        entry.nextAttemptAt = nextAttemptAt;
+        entries.put(id, entry);
+        return entry;
+    }
+
+    /**
+     * Remove an entry and delete its audio file
+     *
+     * @param entry an entry return by {@link #add} or {@link #pending()}
+     */
+    synchronized void remove(Entry entry) {
+        load();
+        if (entries.remove(entry.id) == null) {
+            return;
+        }
+        // delete the audio first, a crash before the DEL line leave an entry without audio which is
+        // dropped on next load instead of an audio without entry which would be sent again
+        entry.file.delete();
+        try {
+            appendJournal(DEL + "\t" + entry.id + "\n");
+            removedCount++;
+        } catch (IOException e) {
+            // the entry will be dropped on next load because its file is gone
+        }
+        if (removedCount > COMPACT_THRESHOLD && removedCount > entries.size()) {
+            try {
+                compact();
+            } catch (IOException e) {
+                // keep the long journal, it's still valid
+            }
+        }
+    }
+
+    /**
+     * Record a failed attempt of an entry, it's kept so the backoff continue after the app restart
+     *
+     * @param entry         a pending entry
+     * @param attempts      a number of attempts already made
+     * @param nextAttemptAt a time in millisecond of the next attempt
+     */
+    synchronized void setRetry(Entry entry, int attempts, long nextAttemptAt) {
+        load();
+        entry.attempts = attempts;
+        entry.nextAttemptAt = nextAttemptAt;
+        if (!entries.containsKey(entry.id)) {
+            return;
+        }
+        try {
+            appendJournal(retryLine(entry.id, attempts, nextAttemptAt));
+        } catch (IOException e) {
+            // the backoff start again from the first attempt after the app restart
+        }
+    }
+
+    /**
+     * Record the resumable upload session of an entry with its chunk size, a session can only be
+     * resumed with the chunk size it was created with
+     *
+     * @param entry     a pending entry
+     * @param sessionId a session id or null to forget the session
+     * @param chunkSize a chunk size of the session in byte, ignored if there is no session
+     * @throws IOException if the journal can't be written
+     */
+    synchronized void setSession(Entry entry, String sessionId, int chunkSize) throws IOException {
+        load();
+        if (!entries.containsKey(entry.id)) {
+            return;
+        }
+        appendJournal(sessionLine(entry.id, sessionId, chunkSize));
+        entry.uploadChunkSize = sessionId != null ? chunkSize : 0;
+        entry.uploadSession = sessionId;
+    }
+
+    /**
+     * Get a snapshot of pending entries, oldest first
+     *
+     * @return list of entries
+     */
+    synchronized List<Entry> pending() {
+        load();
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Get a number of pending entries
+     *
+     * @return number of entries
+     */
+    synchronized int size() {
+        load();
+        return entries.size();
+    }
+
+    // replay the journal and drop entries or files that don't match
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return;
+        }
+        File journal = new File(dir, JOURNAL);
+        if (journal.exists()) {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), UTF8));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        readLine(line);
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                // keep what has been read so far
+            }
+        }
+        // the audio may have been deleted without its DEL line
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            if (!entry.file.exists()) {
+                entries.remove(entry.id);
+                removedCount++;
+            }
+        }
+        // an audio without ADD line, e.g. queued by an older version right before a crash, is adopted
+        // with the parameters that can be read from its header
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.endsWith(AUDIO_EXTENSION)) {
+                    continue;
+                }
+                String id = name.substring(0, name.length() - AUDIO_EXTENSION.length());
+                if (!entries.containsKey(id)) {
+                    Entry entry = adopt(id, file);
+                    try {
+                        appendJournal(addLine(entry));
+                        entries.put(id, entry);
+                    } catch (IOException e) {
+                        // adopt it again on next load
+                    }
+                }
+            }
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            // the journal is still valid
+        }
+    }
+
+    private void readLine(String line) {
+        String[] fields = line.split("\t");
+        if (fields.length == 8 && ADD.equals(fields[0])) {
+            try {
+                Entry entry = new Entry(fields[1], new File(dir, fields[1] + AUDIO_EXTENSION),
+                        Long.parseLong(fields[2]), fields[3], fields[4],
+                        Double.parseDouble(fields[5]), Double.parseDouble(fields[6]), Integer.parseInt(fields[7]));
+                entries.put(entry.id, entry);
+            } catch (NumberFormatException e) {
+                // a partially written line
+            }
+        } else if (fields.length >= 2 && SES.equals(fields[0])) {
+            Entry entry = entries.get(fields[1]);
+            if (entry != null) {
+                // a session written without its chunk size can't be resumed, a new one is created
+                entry.uploadSession = null;
+                entry.uploadChunkSize = 0;
+                if (fields.length == 4) {
+                    try {
+                        entry.uploadChunkSize = Integer.parseInt(fields[3]);
+                        entry.uploadSession = entry.uploadChunkSize > 0 ? fields[2] : null;
+                    } catch (NumberFormatException e) {
+                        // a partially written line
+                    }
+                }
+            }
+        } else if (fields.length == 4 && RTY.equals(fields[0])) {
+            Entry entry = entries.get(fields[1]);
+            if (entry != null) {
+                try {
+                    int attempts = Integer.parseInt(fields[2]);
+                    long nextAttemptAt = Long.parseLong(fields[3]);
+                    entry.attempts = attempts;
+                    entry.nextAttemptAt = nextAttemptAt;
+                } catch (NumberFormatException e) {
+                    // a partially written line
+                }
+            }
+        } else if (fields.length == 2 && DEL.equals(fields[0])) {
+            if (entries.remove(fields[1]) != null) {
+                removedCount++;
+            }
+        }
+    }
+
+    // create an entry for an audio that has no ADD line, the media type and sample rate come from
+    // the FLAC or WAVE header and the language is the one of the device
+    private Entry adopt(String id, File file) {
+        String mediaType = "application/octet-stream";
+        int sampleRate = 0;
+        byte[] header = new byte[28];
+        try {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                in.readFully(header);
+            } finally {
+                in.close();
+            }
+            if (header[0] == 'f' && header[1] == 'L' && header[2] == 'a' && header[3] == 'C') {
+                mediaType = "audio/flac";
+                // 20 bits sample rate of the STREAMINFO block
+                sampleRate = (header[18] & 0xff) << 12 | (header[19] & 0xff) << 4 | (header[20] & 0xff) >> 4;
+            } else if (header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F') {
+                mediaType = "audio/wav";
+                // little endian sample rate of the fmt chunk
+                sampleRate = (header[24] & 0xff) | (header[25] & 0xff) << 8 | (header[26] & 0xff) << 16 | (header[27] & 0xff) << 24;
+            }
+        } catch (IOException e) {
+            // a too short audio, the server reject it and the entry is dropped
+        }
+        return new Entry(id, file, file.lastModified(), mediaType, Locale.getDefault().toLanguageTag(), 0, 0, sampleRate);
+    }
+
+    private static String addLine(Entry entry) {
+        return ADD + "\t" + entry.id + "\t" + entry.createdAt + "\t" + entry.mediaType + "\t" + entry.language +
+                "\t" + entry.lat + "\t" + entry.lng + "\t" + entry.sampleRate + "\n";
+    }
+
+    private static String retryLine(String id, int attempts, long nextAttemptAt) {
+        return RTY + "\t" + id + "\t" + attempts + "\t" + nextAttemptAt + "\n";
+    }
+
+    private static String sessionLine(String id, String sessionId, int chunkSize) {
+        return SES + "\t" + id + (sessionId != null ? "\t" + sessionId + "\t" + chunkSize : "") + "\n";
+    }
+
+    private void appendJournal(String line) throws IOException {
+        FileOutputStream out = new FileOutputStream(new File(dir, JOURNAL), true);
+        try {
+            out.write(line.getBytes(UTF8));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    // rewrite the journal with only pending entries then replace the old one atomically
+    private void compact() throws IOException {
+        if (removedCount == 0) {
+            return;
+        }
+        File tmp = new File(dir, JOURNAL_TMP);
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (Entry entry : entries.values()) {
+                sb.append(addLine(entry));
+                if (entry.attempts > 0) {
+                    sb.append(retryLine(entry.id, entry.attempts, entry.nextAttemptAt));
+                }
+                if (entry.uploadSession != null) {
+                    sb.append(sessionLine(entry.id, entry.uploadSession, entry.uploadChunkSize));
+                }
+            }
+            out.write(sb.toString().getBytes(UTF8));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(new File(dir, JOURNAL))) {
+            tmp.delete();
+            throw new IOException("unable to replace upload journal");
+        }
+        removedCount = 0;
+    }
+
+}
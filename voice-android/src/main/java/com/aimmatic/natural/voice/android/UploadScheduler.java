@@ -0,0 +1,728 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.android;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import com.aimmatic.natural.core.rest.AppContext;
+import com.aimmatic.natural.core.rest.Json;
+import com.aimmatic.natural.voice.rest.ResumableVoiceSender;
+import com.aimmatic.natural.voice.rest.UploadException;
+import com.aimmatic.natural.voice.rest.VoiceSender;
+import com.aimmatic.natural.voice.rest.response.Status;
+import com.aimmatic.natural.voice.rest.response.VoiceResponse;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Upload the entries of an {@link UploadQueue} on a background thread. An entry is removed from the
+ * queue only when the server accept it or reject it permanently. Network error, timeout and server
+ * error are retried with an exponential backoff and a random jitter, and the queue is drained again
+ * as soon as the connectivity come back.
+ * <p>
+ * Recordings made back-to-back are sent in batch. The scheduler wait for the batch window after a
+ * new recording, then every due recording is sent, up to the batch size. The requests of a batch go
+ * through a client that send one request at a time per host, so they reuse a single keep-alive
+ * connection instead of opening one connection each. Each request still carry one recording, so
+ * each result map back to its recording.
+ * <p>
+ * A recording still in memory wait for the batch window in memory, it's written into the queue only
+ * if the upload failed and must be retried, the network is down or the scheduler is stopped.
+ * <p>
+ * When resumable upload is enabled, a recording larger than one chunk is sent alone with
+ * {@link ResumableVoiceSender}. Its session is kept in the queue, so a retry only send the chunks
+ * the server doesn't have yet, even after the app restart. A server which answer 404 or 405 to the
+ * session endpoints doesn't support it, the recordings are then sent in one request.
+ */
+class UploadScheduler {
+
+    private static final String TAG = "UploadScheduler";
+
+    // first retry delay in millisecond, it's doubled on each attempt
+    static final long BASE_DELAY = 2000;
+    // longest retry delay in millisecond
+    static final long MAX_DELAY = 10 * 60 * 1000;
+    // an entry not sent after this duration in millisecond is dropped
+    static final long MAX_AGE = 24 * 60 * 60 * 1000;
+    // default time in millisecond to wait for more recordings before sending a batch
+    static final long DEFAULT_BATCH_WINDOW = 500;
+    // time in millisecond to wait for a batch when the client has no timeout
+    static final long DEFAULT_BATCH_TIMEOUT = 2 * 60 * 1000;
+    // default maximum number of recordings sent together
+    static final int DEFAULT_BATCH_SIZE = 8;
+    // maximum number of audio byte sent together, a single larger recording is sent alone
+    static final long MAX_BATCH_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Listener of upload result
+     */
+    interface Listener {
+        /**
+         * Call when an entry has been sent or dropped, it's not called for a failure that will be retried
+         *
+         * @param entry    the completed entry, a {@link MemoryEntry} if the recording was sent from memory
+         * @param response the server response or an error status
+         */
+        void onUploadComplete(UploadQueue.Entry entry, VoiceResponse response);
+    }
+
+    private final UploadQueue queue;
+    private final Context ctx;
+    private final AppContext appContext;
+    private final Listener listener;
+    private final Random random = new Random();
+
+    private HandlerThread thread;
+    private Handler handler;
+    private BroadcastReceiver connectivityReceiver;
+    private long batchWindow = DEFAULT_BATCH_WINDOW;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean batchPending;
+    private boolean stopped;
+    // recordings in memory waiting for the batch window
+    private final ArrayList<MemoryEntry> memoryEntries = new ArrayList<>();
+    // client sending the requests of a batch one after another, create on first use
+    private OkHttpClient batchClient;
+    // chunk size of resumable upload, 0 if disabled
+    private int resumableChunkSize;
+    // true once the server has answered it doesn't have the session endpoints
+    private boolean resumableUnsupported;
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    private final Runnable batchDrain = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (UploadScheduler.this) {
+                batchPending = false;
+            }
+            drain();
+        }
+    };
+
+    /**
+     * A recording still in memory, it's not in the journal until its upload must be retried
+     */
+    static class MemoryEntry extends UploadQueue.Entry {
+
+        final RecordingBuffer recording;
+
+        MemoryEntry(RecordingBuffer recording, String mediaType, String language, double lat, double lng, int sampleRate) {
+            super(UUID.randomUUID().toString(), null, System.currentTimeMillis(), mediaType, language, lat, lng, sampleRate);
+            this.recording = recording;
+        }
+
+    }
+
+    // result of one request of a batch, the request thread and the scheduler thread set it under its lock
+    private static class Result {
+        int code;
+        VoiceResponse response;
+        IOException error;
+        // true once the result is set, a late answer is then ignored
+        boolean answered;
+    }
+
+    /**
+     * Create a scheduler
+     *
+     * @param queue      a queue to drain
+     * @param ctx        android context use to listen to connectivity change
+     * @param appContext app context use to send the audio
+     * @param listener   a listener of upload result
+     */
+    UploadScheduler(UploadQueue queue, Context ctx, AppContext appContext, Listener listener) {
+        this.queue = queue;
+        this.ctx = ctx;
+        this.appContext = appContext;
+        this.listener = listener;
+    }
+
+    /**
+     * Start the upload thread and drain the entries left by a previous run, a stopped scheduler is
+     * never started again
+     */
+    synchronized void start() {
+        if (thread != null || stopped) {
+            return;
+        }
+        thread = new HandlerThread("voice-upload");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        connectivityReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (isConnected()) {
+                    schedule();
+                }
+            }
+        };
+        ctx.registerReceiver(connectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        handler.post(drain);
+    }
+
+    /**
+     * Move an audio file into the queue and send it
+     *
+     * @param audio      a recorded audio file, it's moved into the queue
+     * @param mediaType  a content type of the audio
+     * @param language   a BCP-47 code of the speech language
+     * @param lat        a latitude of the device
+     * @param lng        a longitude of the device
+     * @param sampleRate a sample rate of the audio
+     * @throws IOException if the audio can't be queued
+     */
+    void enqueue(File audio, MediaType mediaType, String language, double lat, double lng, int sampleRate) throws IOException {
+        queue.add(audio, mediaType.toString(), language, lat, lng, sampleRate);
+        scheduleBatch();
+    }
+
+    /**
+     * Send a recording. A recording in memory wait for the batch window, it's moved into the queue
+     * only if it must be retried. A recording in a file is moved into the queue. The recording is
+     * released once it has been sent or queued.
+     *
+     * @param audio      a recorded audio
+     * @param mediaType  a content type of the audio
+     * @param language   a BCP-47 code of the speech language
+     * @param lat        a latitude of the device
+     * @param lng        a longitude of the device
+     * @param sampleRate a sample rate of the audio
+     * @throws IOException if the audio can't be queued
+     */
+    void send(RecordingBuffer audio, MediaType mediaType, String language, double lat, double lng, int sampleRate) throws IOException {
+        if (audio.isInMemory() && isConnected()) {
+            synchronized (this) {
+                if (!stopped) {
+                    memoryEntries.add(new MemoryEntry(audio, mediaType.toString(), language, lat, lng, sampleRate));
+                    scheduleBatch();
+                    return;
+                }
+            }
+        }
+        try {
+            enqueue(audio.toFile(), mediaType, language, lat, lng, sampleRate);
+        } finally {
+            audio.release();
+        }
+    }
+
+    /**
+     * Write a recording that failed to be sent into the queue, it's sent again after the first retry
+     * delay. The recording is released.
+     *
+     * @param audio      a recorded audio
+     * @param mediaType  a content type of the audio
+     * @param language   a BCP-47 code of the speech language
+     * @param lat        a latitude of the device
+     * @param lng        a longitude of the device
+     * @param sampleRate a sample rate of the audio
+     */
+    void retryLater(RecordingBuffer audio, MediaType mediaType, String language, double lat, double lng, int sampleRate) {
+        // the first attempt has failed, wait like any other retry
+        if (persist(new MemoryEntry(audio, mediaType.toString(), language, lat, lng, sampleRate),
+                1, System.currentTimeMillis() + backoffDelay(1, random))) {
+            schedule();
+        }
+    }
+
+    /**
+     * Set how recordings are gathered into a batch
+     *
+     * @param batchWindow a time in millisecond to wait for more recordings, 0 to send immediately
+     * @param batchSize   a maximum number of recordings sent together, at least 1
+     */
+    synchronized void setBatch(long batchWindow, int batchSize) {
+        if (batchWindow < 0 || batchSize < 1) {
+            throw new IllegalArgumentException("batch window must not be negative and batch size must be at least 1");
+        }
+        this.batchWindow = batchWindow;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Enable or disable resumable upload of long recordings
+     *
+     * @param chunkSize a chunk size in byte, 0 to send every recording in one request
+     */
+    synchronized void setResumableUpload(int chunkSize) {
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("chunk size must not be negative");
+        }
+        this.resumableChunkSize = chunkSize;
+    }
+
+    // wait for the batch window unless the batch is already full
+    private synchronized void scheduleBatch() {
+        if (handler == null) {
+            return;
+        }
+        if (batchWindow == 0 || queue.size() + memoryEntries.size() >= batchSize) {
+            schedule();
+        } else if (!batchPending) {
+            batchPending = true;
+            handler.postDelayed(batchDrain, batchWindow);
+        }
+    }
+
+    /**
+     * Drain the queue now, entries waiting for a retry keep their delay
+     */
+    synchronized void schedule() {
+        if (handler != null) {
+            handler.removeCallbacks(drain);
+            handler.post(drain);
+        }
+    }
+
+    /**
+     * Stop the upload thread, the pending entries stay in the queue and the recordings in memory are
+     * written into it. Once stopped, a recording sent is only written into the queue.
+     */
+    synchronized void stop() {
+        stopped = true;
+        persistMemoryEntries();
+        if (thread == null) {
+            return;
+        }
+        ctx.unregisterReceiver(connectivityReceiver);
+        handler.removeCallbacks(drain);
+        handler.removeCallbacks(batchDrain);
+        batchPending = false;
+        thread.quit();
+        thread = null;
+        handler = null;
+    }
+
+    // send every due entry then wait for the next retry
+    @VisibleForTesting
+    void drain() {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+        }
+        if (!isConnected()) {
+            // the connectivity receiver drain the queue when the network come back
+            synchronized (this) {
+                persistMemoryEntries();
+            }
+            return;
+        }
+        int maxSize;
+        int chunkSize;
+        // oldest first, the recordings in memory are the newest
+        List<UploadQueue.Entry> entries = queue.pending();
+        synchronized (this) {
+            maxSize = batchSize;
+            chunkSize = resumableUnsupported ? 0 : resumableChunkSize;
+            entries.addAll(memoryEntries);
+            memoryEntries.clear();
+        }
+        long nextAttemptAt = Long.MAX_VALUE;
+        long now = System.currentTimeMillis();
+        ArrayList<UploadQueue.Entry> batch = new ArrayList<>();
+        long batchBytes = 0;
+        for (UploadQueue.Entry entry : entries) {
+            if (entry.nextAttemptAt > now) {
+                nextAttemptAt = Math.min(nextAttemptAt, entry.nextAttemptAt);
+                continue;
+            }
+            boolean inMemory = entry instanceof MemoryEntry;
+            long length = inMemory ? ((MemoryEntry) entry).recording.size() : entry.file.length();
+            if (!inMemory && chunkSize > 0 && length > chunkSize) {
+                if (!uploadResumable(entry, chunkSize)) {
+                    nextAttemptAt = Math.min(nextAttemptAt, entry.nextAttemptAt);
+                }
+                continue;
+            }
+            if (!batch.isEmpty() && (batch.size() >= maxSize || batchBytes + length > MAX_BATCH_BYTES)) {
+                nextAttemptAt = Math.min(nextAttemptAt, uploadBatch(batch));
+                batch.clear();
+                batchBytes = 0;
+            }
+            batch.add(entry);
+            batchBytes += length;
+        }
+        if (!batch.isEmpty()) {
+            nextAttemptAt = Math.min(nextAttemptAt, uploadBatch(batch));
+        }
+        synchronized (this) {
+            // don't remove the callbacks, an entry may have been queued while draining
+            if (handler != null && nextAttemptAt != Long.MAX_VALUE) {
+                handler.postDelayed(drain, Math.max(0, nextAttemptAt - System.currentTimeMillis()));
+            }
+        }
+    }
+
+    // send all entries of a batch on one connection, return the earliest retry time or Long.MAX_VALUE
+    private long uploadBatch(List<UploadQueue.Entry> batch) {
+        final CountDownLatch done = new CountDownLatch(batch.size());
+        Result[] results = new Result[batch.size()];
+        Call[] calls = new Call[batch.size()];
+        OkHttpClient client = getBatchClient();
+        VoiceSender voiceSender = new VoiceSender(appContext);
+        for (int i = 0; i < batch.size(); i++) {
+            UploadQueue.Entry entry = batch.get(i);
+            final Result result = results[i] = new Result();
+            MediaType mediaType = MediaType.parse(entry.mediaType);
+            RequestBody audio;
+            String filename;
+            if (entry instanceof MemoryEntry) {
+                RecordingBuffer recording = ((MemoryEntry) entry).recording;
+                filename = recording.getName();
+                try {
+                    audio = recording.requestBody(mediaType);
+                } catch (IOException e) {
+                    // the recording has been released, it can't be sent
+                    result.answered = true;
+                    result.error = e;
+                    done.countDown();
+                    continue;
+                }
+            } else {
+                filename = entry.file.getName();
+                audio = RequestBody.create(mediaType, entry.file);
+            }
+            calls[i] = client.newCall(voiceSender.newVoiceRequest(audio, filename, entry.language, entry.lat, entry.lng, entry.sampleRate));
+            calls[i].enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    synchronized (result) {
+                        if (!result.answered) {
+                            result.answered = true;
+                            result.error = e;
+                        }
+                    }
+                    done.countDown();
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    int code = response.code();
+                    VoiceResponse voiceResponse = null;
+                    IOException error = null;
+                    try {
+                        if (code < 400 && response.body() != null) {
+                            voiceResponse = parseVoiceResponse(response.body());
+                        }
+                    } catch (IOException e) {
+                        error = e;
+                    } finally {
+                        response.close();
+                    }
+                    synchronized (result) {
+                        if (!result.answered) {
+                            result.answered = true;
+                            result.code = code;
+                            result.response = voiceResponse;
+                            result.error = error;
+                        }
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            // the requests are sent one after another
+            if (!done.await(batchTimeout() * batch.size(), TimeUnit.MILLISECONDS)) {
+                // a request hang, give up on it so the scheduler thread is free again
+                for (int i = 0; i < batch.size(); i++) {
+                    synchronized (results[i]) {
+                        if (!results[i].answered) {
+                            results[i].answered = true;
+                            results[i].error = new InterruptedIOException("no answer from server");
+                            if (calls[i] != null) {
+                                calls[i].cancel();
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // the scheduler is stopping, the entries stay in the queue
+            for (int i = 0; i < batch.size(); i++) {
+                if (calls[i] != null) {
+                    calls[i].cancel();
+                }
+                if (batch.get(i) instanceof MemoryEntry) {
+                    persist((MemoryEntry) batch.get(i), 0, 0);
+                }
+            }
+            Thread.currentThread().interrupt();
+            return Long.MAX_VALUE;
+        }
+        long nextAttemptAt = Long.MAX_VALUE;
+        for (int i = 0; i < batch.size(); i++) {
+            UploadQueue.Entry entry = batch.get(i);
+            // every result is answered now and no longer change
+            if (!handleResult(entry, results[i])) {
+                nextAttemptAt = Math.min(nextAttemptAt, entry.nextAttemptAt);
+            }
+        }
+        return nextAttemptAt;
+    }
+
+    // send an entry in chunks, resuming its previous session, return false if it must be retried
+    private boolean uploadResumable(UploadQueue.Entry entry, int chunkSize) {
+        Result result = new Result();
+        try {
+            Response response;
+            try {
+                response = resume(entry, chunkSize);
+            } catch (UploadException e) {
+                if (e.getCode() != 404 && e.getCode() != 405) {
+                    throw e;
+                }
+                // the server doesn't have the session endpoints, send this and later recordings in one request
+                Log.d(TAG, "resumable upload is not supported by the server, status " + e.getCode());
+                synchronized (this) {
+                    resumableUnsupported = true;
+                }
+                queue.setSession(entry, null, 0);
+                return uploadBatch(Collections.singletonList(entry)) == Long.MAX_VALUE;
+            }
+            try {
+                result.code = response.code();
+                if (result.code < 400 && response.body() != null) {
+                    result.response = parseVoiceResponse(response.body());
+                }
+            } finally {
+                response.close();
+            }
+        } catch (UploadException e) {
+            result.code = e.getCode();
+        } catch (IOException e) {
+            result.error = e;
+        }
+        return handleResult(entry, result);
+    }
+
+    // send the chunks the server doesn't have, a session expired by the server is created again once
+    // with the current chunk size
+    private Response resume(UploadQueue.Entry entry, int chunkSize) throws IOException {
+        String session = entry.uploadSession;
+        if (session != null) {
+            try {
+                // the chunk indexes and offsets of a session depend on the size it was created with
+                return new ResumableVoiceSender(appContext, entry.uploadChunkSize).resume(session, entry.file);
+            } catch (UploadException e) {
+                if (e.getCode() != 404) {
+                    throw e;
+                }
+                // the server has expired the session, start again from the first chunk
+            }
+        }
+        ResumableVoiceSender sender = new ResumableVoiceSender(appContext, chunkSize);
+        session = createSession(sender, entry);
+        queue.setSession(entry, session, chunkSize);
+        return sender.resume(session, entry.file);
+    }
+
+    // a client sharing the connection pool of the app client but sending one request at a time per
+    // host, so the requests of a batch reuse the same connection instead of opening up to 5 of them
+    private synchronized OkHttpClient getBatchClient() {
+        if (batchClient == null) {
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequestsPerHost(1);
+            batchClient = appContext.getOkHttpClient().newBuilder().dispatcher(dispatcher).build();
+        }
+        return batchClient;
+    }
+
+    // the longest time a request can take without failing on the client timeouts
+    private long batchTimeout() {
+        OkHttpClient client = appContext.getOkHttpClient();
+        long timeout = (long) client.connectTimeoutMillis() + client.writeTimeoutMillis() + client.readTimeoutMillis();
+        if (client.connectTimeoutMillis() == 0 || client.writeTimeoutMillis() == 0 || client.readTimeoutMillis() == 0) {
+            // one of the timeout is disabled
+            return DEFAULT_BATCH_TIMEOUT;
+        }
+        return timeout;
+    }
+
+    private static String createSession(ResumableVoiceSender sender, UploadQueue.Entry entry) throws IOException {
+        return sender.createSession(entry.file, MediaType.parse(entry.mediaType), entry.language, entry.lat, entry.lng, entry.sampleRate);
+    }
+
+    // complete or retry an entry, return false if it must be retried
+    private boolean handleResult(UploadQueue.Entry entry, Result result) {
+        if (result.error != null) {
+            Log.d(TAG, "unable to send voice data to backend due to " + result.error.getLocalizedMessage());
+            return retry(entry, new Status(-1, result.error.getMessage(), null));
+        }
+        if (isRetryable(result.code)) {
+            return retry(entry, new Status(result.code, "unable to send audio to server", null));
+        }
+        if (result.code >= 400) {
+            complete(entry, new VoiceResponse(null, new Status(result.code, "unable to send audio to server", null)));
+        } else {
+            complete(entry, result.response);
+        }
+        return true;
+    }
+
+    // schedule the next attempt, drop the entry when it's too old
+    private boolean retry(UploadQueue.Entry entry, Status status) {
+        long now = System.currentTimeMillis();
+        if (entry instanceof MemoryEntry) {
+            // the first attempt of a recording in memory has failed, it's retried from the queue
+            long nextAttemptAt = now + backoffDelay(1, random);
+            if (!persist((MemoryEntry) entry, 1, nextAttemptAt)) {
+                return true;
+            }
+            entry.nextAttemptAt = nextAttemptAt;
+            return false;
+        }
+        if (now - entry.createdAt > MAX_AGE) {
+            complete(entry, new VoiceResponse(null, status));
+            return true;
+        }
+        int attempts = entry.attempts + 1;
+        queue.setRetry(entry, attempts, now + backoffDelay(attempts, random));
+        return false;
+    }
+
+    private void complete(UploadQueue.Entry entry, VoiceResponse voiceResponse) {
+        if (entry instanceof MemoryEntry) {
+            ((MemoryEntry) entry).recording.release();
+        } else {
+            queue.remove(entry);
+        }
+        if (voiceResponse == null) {
+            voiceResponse = new VoiceResponse(null, new Status(-1, "unable to send audio to server", null));
+        }
+        listener.onUploadComplete(entry, voiceResponse);
+    }
+
+    // write a recording in memory into the queue then release it, return false if it's lost
+    private boolean persist(MemoryEntry entry, int attempts, long nextAttemptAt) {
+        try {
+            queue.add(entry.recording.toFile(), entry.mediaType, entry.language, entry.lat, entry.lng, entry.sampleRate,
+                    attempts, nextAttemptAt);
+            return true;
+        } catch (IOException e) {
+            Log.d(TAG, "unable to queue voice data due to " + e.getLocalizedMessage());
+            listener.onUploadComplete(entry, new VoiceResponse(null, new Status(-1, e.getMessage(), null)));
+            return false;
+        } finally {
+            entry.recording.release();
+        }
+    }
+
+    // keep the recordings waiting in memory in the queue, call with the lock held
+    private void persistMemoryEntries() {
+        for (MemoryEntry entry : memoryEntries) {
+            persist(entry, 0, 0);
+        }
+        memoryEntries.clear();
+    }
+
+    private boolean isConnected() {
+        ConnectivityManager cm = (ConnectivityManager) ctx.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) {
+            return true;
+        }
+        NetworkInfo networkInfo = cm.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    /**
+     * Check whether a failed request may succeed later. Timeout, too many request and server error
+     * are temporary, other client error will fail the same way again.
+     *
+     * @param code http status code
+     * @return true if the request should be retried
+     */
+    static boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code >= 500;
+    }
+
+    /**
+     * Get a delay before the next attempt. The delay is doubled on each attempt up to
+     * {@link #MAX_DELAY} and a random jitter of up to half the delay is removed so devices that lost
+     * the network together don't retry together.
+     *
+     * @param attempts number of failed attempts, at least 1
+     * @param random   a random generator
+     * @return a delay in millisecond
+     */
+    static long backoffDelay(int attempts, Random random) {
+        long delay = BASE_DELAY << Math.min(attempts - 1, 20);
+        delay = Math.min(delay, MAX_DELAY);
+        return delay - (long) (random.nextDouble() * delay / 2);
+    }
+
+    /**
+     * Decode the voice response or create an error response if server failed
+     *
+     * @param response a response of upload request
+     * @return a voice response, null if response has no body
+     * @throws IOException if the body can't be read
+     */
+    static VoiceResponse readVoiceResponse(Response response) throws IOException {
+        if (response.code() >= 400) {
+            response.close();
+            return new VoiceResponse(null, new Status(response.code(), "unable to send audio to server", null));
+        }
+        if (response.body() != null) {
+            return parseVoiceResponse(response.body());
+        }
+        return null;
+    }
+
+    // decode a voice response as it's read then close the body, null if the body is empty
+    private static VoiceResponse parseVoiceResponse(ResponseBody body) throws IOException {
+        try {
+            return Json.fromJson(body, VoiceResponse.class);
+        } catch (JsonParseException e) {
+            Log.d(TAG, "unable to decode voice response due to " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+}
@@ -18,12 +18,16 @@ import android.media.AudioRecord;
 import android.media.MediaRecorder;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Process;
 import android.util.Log;
 
 import com.aimmatic.natural.voice.encoder.AudioMeta;
 import com.aimmatic.natural.voice.encoder.EncodingException;
 import com.aimmatic.natural.voice.encoder.EncodingReady;
 
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
 /**
  * This class represent an audio recorder. It record the speech into a wave format PCM 16 bit.
  * The voice recorder only record wave data if it detect any speech on the byte stream
@@ -38,10 +42,16 @@ public class VoiceRecorder implements EncodingReady {
     private static final int CHANNEL = AudioFormat.CHANNEL_IN_MONO;
     private static final int ENCODING = AudioFormat.ENCODING_PCM_16BIT;
 
-    //
-    private static final int AMPLITUDE_THRESHOLD = 1500;
     // 2 second if no speech detected if it will automatically end the record
     static final int SPEECH_TIMEOUT_MILLIS = 2000;
+    // number of audio record buffer can be queued between capture and encoder thread
+    static final int BUFFER_DEPTH = 32;
+    // audio kept before the voice is detected so the speech onset is not clipped
+    static final int PRE_ROLL_MILLIS = 300;
+    // maximum time the encoder thread wait for a new buffer before checking the state again
+    private static final long AWAIT_BUFFER_MILLIS = 100;
+    // record still continue
+    private static final byte RECORD_CONTINUE = -1;
 
     /**
      * encode audio as wave pcm 16 bit
@@ -87,9 +97,10 @@ public class VoiceRecorder implements EncodingReady {
         }
 
         /**
-         * Called when the recorder is hearing voice.
+         * Called when the recorder is hearing voice. The data array may be reused by the encoder
+         * after this method return, copy it if it's needed afterward.
          *
-         * @param data The audio data in {@link AudioFormat#ENCODING_PCM_16BIT}.
+         * @param data The audio data encoded by the {@link RecordStrategy#getEncoder()}.
          * @param size The size of the actual data in {@code data}.
          */
         public void onRecording(byte[] data, int size) {
@@ -119,9 +130,12 @@ public class VoiceRecorder implements EncodingReady {
     int sizeInBytes;
     RecordStrategy recordStrategy;
     //
-    private HandlerThread thread;
+    private HandlerThread captureThread;
+    private HandlerThread encodeThread;
+    private AudioRingBuffer ringBuffer;
+    private PreRollBuffer preRollBuffer;
     private final Object lock = new Object();
-    private boolean stop;
+    private volatile boolean stop;
     // internal callback
     private EventListener eventListener;
 
@@ -159,31 +173,72 @@ public class VoiceRecorder implements EncodingReady {
         audioRecord.startRecording();
         // assign the callback
         recordStrategy.getEncoder().setEncodingReady(this);
+        recordStrategy.getVoiceActivityDetector().initialize(audioMeta);
+        ringBuffer = new AudioRingBuffer(recordStrategy.getBufferDepth(), sizeInBytes);
+        if (recordStrategy.getPreRollDuration() > 0) {
+            // 16 bit per sample
+            int preRollBytes = (int) ((long) audioMeta.getSampleRate() * audioMeta.getChannel() * 2
+                    * recordStrategy.getPreRollDuration() / 1000);
+            preRollBuffer = new PreRollBuffer(preRollBytes, sizeInBytes);
+        }
         // Start processing the captured audio.
-        thread = new HandlerThread("read-audio-buffer");
+        encodeThread = new HandlerThread("encode-audio-buffer");
+        encodeThread.start();
+        new Handler(encodeThread.getLooper()).post(new TransferFromAudioRecorder());
+        // Start draining the audio record, this thread does nothing else than reading the buffer
+        captureThread = new HandlerThread("read-audio-buffer", Process.THREAD_PRIORITY_URGENT_AUDIO);
         Log.d(TAG, "start audio recorder");
-        thread.start();
-        Handler handler = new Handler(thread.getLooper());
-        TransferFromAudioRecorder readAudioBuffer = new TransferFromAudioRecorder();
-        handler.post(readAudioBuffer);
+        captureThread.start();
+        new Handler(captureThread.getLooper()).post(new CaptureFromAudioRecorder(audioRecord));
     }
 
     /**
      * Stops recording audio.
      */
     public void stop() {
+        HandlerThread capture;
+        AudioRecord record;
         synchronized (lock) {
-            if (thread != null) {
+            capture = captureThread;
+            record = audioRecord;
+            if (captureThread != null) {
                 stop = true;
-                thread.quit();
-                thread = null;
+                captureThread.quit();
+                encodeThread.quit();
+                captureThread = null;
+                encodeThread = null;
+                // let the encoder thread drain the remaining buffer
+                ringBuffer.wakeUp();
             }
-            if (audioRecord != null) {
-                audioRecord.stop();
-                audioRecord.release();
-                audioRecord = null;
+            audioRecord = null;
+        }
+        if (record != null) {
+            // stopping the record unblock a read in progress, so the caller doesn't wait for a full buffer
+            record.stop();
+            // the record can only be released once the capture thread has left read
+            if (capture != null) {
+                awaitCapture(capture);
+            }
+            record.release();
+        }
+        Log.d(TAG, "stop audio recorder");
+    }
+
+    // wait until the capture thread has returned from its last read, keep the interrupt state
+    private static void awaitCapture(HandlerThread thread) {
+        if (thread == Thread.currentThread()) {
+            return;
+        }
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
             }
-            Log.d(TAG, "stop audio recorder");
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -230,13 +285,46 @@ public class VoiceRecorder implements EncodingReady {
     }
 
     /**
-     * Continuously processes the captured audio and notifies {@link #eventListener} of corresponding
-     * events.
+     * Continuously drains the audio record into the ring buffer. It never waits for the encoder,
+     * if the encoder is too slow the buffer is dropped.
+     */
+    private class CaptureFromAudioRecorder implements Runnable {
+
+        // the record is only released by stop after this thread has ended
+        private final AudioRecord audioRecord;
+
+        CaptureFromAudioRecorder(AudioRecord audioRecord) {
+            this.audioRecord = audioRecord;
+        }
+
+        @Override
+        public void run() {
+            Log.d(TAG, "read from audio record buffer");
+            // no lock is held here, a blocking read must not keep stop waiting
+            while (!stop && audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
+                ByteBuffer buffer = ringBuffer.writeFrame();
+                final int size = audioRecord.read(buffer, buffer.capacity());
+                if (size < 0) {
+                    Log.d(TAG, "audio record read error " + size);
+                    return;
+                }
+                if (size > 0 && !stop) {
+                    ringBuffer.commitWrite(size, System.currentTimeMillis());
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Continuously processes the captured audio from the ring buffer and notifies {@link #eventListener}
+     * of corresponding events.
      */
     private class TransferFromAudioRecorder implements Runnable {
 
-        private boolean onRecording(byte[] buffer, int size) {
+        private boolean onRecording(ByteBuffer buffer, int size) {
             try {
+                buffer.position(0);
                 recordStrategy.getEncoder().encode(buffer, size);
                 return false;
             } catch (EncodingException e) {
@@ -247,55 +335,81 @@ public class VoiceRecorder implements EncodingReady {
 
         @Override
         public void run() {
-            Log.d(TAG, "read from audio record buffer");
-            byte[] buffer = new byte[sizeInBytes];
             while (true) {
-                synchronized (lock) {
-                    if (stop) {
+                // read the stop state first, any buffer published before stop is visible afterward
+                final boolean stopping = stop;
+                if (ringBuffer.isEmpty()) {
+                    if (stopping) {
                         endRecording(RECORD_END_BY_USER);
                         return;
                     }
-                    final int size = audioRecord.read(buffer, 0, buffer.length);
-                    if (size > 0 && !stop) {
-                        final long now = System.currentTimeMillis();
-                        if (isHearingVoice(buffer, size)) {
-                            if (voiceHeardMillis == Long.MAX_VALUE) {
-                                voiceStartStartedMillis = now;
-                                eventListener.onRecordStart(audioMeta);
-                                recordStrategy.getEncoder().initialize(audioMeta);
-                            }
-                            // if there is an exception occurs
-                            if (onRecording(buffer, size)) {
-                                end();
-                                endRecording(RECORD_END_BY_INTERRUPTED);
-                                return;
-                            }
-                            voiceHeardMillis = now;
-                            if (now - voiceStartStartedMillis > recordStrategy.getMaxRecordDuration()) {
-                                end();
-                                endRecording(RECORD_END_BY_MAX);
-                                return;
-                            }
-                        } else if (voiceHeardMillis != Long.MAX_VALUE) {
-                            // if there is an exception occurs
-                            if (onRecording(buffer, size)) {
-                                end();
-                                endRecording(RECORD_END_BY_INTERRUPTED);
-                                return;
-                            }
-                            if (recordStrategy.getSpeechTimeout() > 0 && (now - voiceHeardMillis) > recordStrategy.getSpeechTimeout()) {
-                                Log.d(">>>", "End by timeout");
-                                end();
-                                endRecording(RECORD_END_BY_IDLE);
-                                return;
-                            }
-                        }
+                    ringBuffer.awaitFrame(AWAIT_BUFFER_MILLIS);
+                    continue;
+                }
+                byte state = process(ringBuffer.readFrame(), ringBuffer.readSamples(),
+                        ringBuffer.readSize(), ringBuffer.readTimestamp());
+                ringBuffer.commitRead();
+                if (state != RECORD_CONTINUE) {
+                    end();
+                    endRecording(state);
+                    return;
+                }
+            }
+        }
+
+        // process a captured buffer and return a state to end the record or RECORD_CONTINUE
+        private byte process(ByteBuffer buffer, ShortBuffer samples, int size, long now) {
+            if (recordStrategy.getVoiceActivityDetector().isHearingVoice(samples)) {
+                if (voiceHeardMillis == Long.MAX_VALUE) {
+                    voiceStartStartedMillis = now;
+                    eventListener.onRecordStart(audioMeta);
+                    recordStrategy.getEncoder().initialize(audioMeta);
+                    // if there is an exception occurs
+                    if (flushPreRoll()) {
+                        return RECORD_END_BY_INTERRUPTED;
                     }
                 }
+                // if there is an exception occurs
+                if (onRecording(buffer, size)) {
+                    return RECORD_END_BY_INTERRUPTED;
+                }
+                voiceHeardMillis = now;
+                if (now - voiceStartStartedMillis > recordStrategy.getMaxRecordDuration()) {
+                    return RECORD_END_BY_MAX;
+                }
+            } else if (voiceHeardMillis != Long.MAX_VALUE) {
+                // if there is an exception occurs
+                if (onRecording(buffer, size)) {
+                    return RECORD_END_BY_INTERRUPTED;
+                }
+                if (recordStrategy.getSpeechTimeout() > 0 && (now - voiceHeardMillis) > recordStrategy.getSpeechTimeout()) {
+                    Log.d(">>>", "End by timeout");
+                    return RECORD_END_BY_IDLE;
+                }
+            } else if (preRollBuffer != null) {
+                preRollBuffer.write(buffer, size);
+            }
+            return RECORD_CONTINUE;
+        }
+
+        // encode the audio captured before the voice was detected, return true if an exception occurs
+        private boolean flushPreRoll() {
+            if (preRollBuffer == null) {
+                return false;
+            }
+            for (int i = 0; i < preRollBuffer.count(); i++) {
+                if (onRecording(preRollBuffer.frame(i), preRollBuffer.size(i))) {
+                    return true;
+                }
             }
+            preRollBuffer.clear();
+            return false;
         }
 
         private void endRecording(byte state) {
+            if (ringBuffer.getOverrunCount() > 0) {
+                Log.d(TAG, "encoder too slow, dropped " + ringBuffer.getOverrunCount() + " audio buffer");
+            }
             if (voiceHeardMillis != Long.MAX_VALUE) {
                 voiceHeardMillis = Long.MAX_VALUE;
                 recordStrategy.getEncoder().release();
@@ -308,21 +422,6 @@ public class VoiceRecorder implements EncodingReady {
             stop();
         }
 
-        // detect if we can hear the voice
-        private boolean isHearingVoice(byte[] buffer, int size) {
-            for (int i = 0; i < size - 1; i += 2) {
-                // The buffer has LINEAR16 in little endian.
-                int s = buffer[i + 1];
-                if (s < 0) s *= -1;
-                s <<= 8;
-                s += Math.abs(buffer[i]);
-                if (s > AMPLITUDE_THRESHOLD) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
     }
 
 }
@@ -13,24 +13,14 @@ limitations under the License.
 
 package com.aimmatic.natural.voice.android;
 
-import android.Manifest;
 import android.app.Service;
-import android.content.Context;
 import android.content.Intent;
-import android.content.pm.PackageManager;
-import android.location.Criteria;
 import android.location.Location;
-import android.location.LocationListener;
-import android.location.LocationManager;
 import android.os.Binder;
-import android.os.Bundle;
-import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.IBinder;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
-import android.support.v4.content.ContextCompat;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -40,19 +30,26 @@ import com.aimmatic.natural.voice.encoder.FlacEncoder;
 import com.aimmatic.natural.voice.encoder.WavEncoder;
 import com.aimmatic.natural.voice.rest.Language;
 import com.aimmatic.natural.voice.rest.Resources;
+import com.aimmatic.natural.voice.rest.ResumableVoiceSender;
+import com.aimmatic.natural.voice.rest.StreamingAudioBody;
 import com.aimmatic.natural.voice.rest.VoiceSender;
 import com.aimmatic.natural.voice.rest.response.Status;
 import com.aimmatic.natural.voice.rest.response.VoiceResponse;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Locale;
-
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.MediaType;
 import okhttp3.Response;
 
@@ -89,10 +86,65 @@ public class VoiceRecorderService extends Service {
     // binder
     private AudioRecordBinder binder = new AudioRecordBinder();
 
-    private byte stopPolicy;
-    private int recordSampleRate;
-    private VoiceRecorder voiceRecorder;
-    private RecordStrategy currentStrategy;
+    // cache file name prefix of recording that doesn't fit in memory
+    private static final String RECORD_FILE_PREFIX = "aimmatic-audio";
+    // default number of recordings prepared for sending at the same time
+    private static final int DEFAULT_SEND_PARALLELISM = 2;
+    // maximum number of recordings waiting for a send thread
+    static final int SEND_QUEUE_CAPACITY = 16;
+    // time in second an idle send thread is kept
+    private static final long SEND_KEEP_ALIVE = 30;
+
+    // the session being recorded
+    private RecordSession currentSession;
+    // the last ended session waiting for user's choice
+    private RecordSession pendingSession;
+    // single app context of the service, its http client is shared by every upload
+    private AndroidAppContext appContext;
+    private UploadScheduler uploadScheduler;
+    private LocationCache locationCache;
+    private ThreadPoolExecutor sendExecutor;
+    private int sendParallelism = DEFAULT_SEND_PARALLELISM;
+    // true once the service is destroyed, the components are then stopped and never created again
+    private boolean destroyed;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        deleteStaleRecordings();
+        // have a location ready before the first upload
+        getLocationCache();
+        // send the audio left in the queue by a previous run
+        getUploadScheduler();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDestroy() {
+        synchronized (this) {
+            // the stopped components are kept so the tasks and callbacks still running don't
+            // create new ones on a dead service
+            destroyed = true;
+            if (sendExecutor != null) {
+                // the recordings already waiting are still handed to the scheduler, which only
+                // write them into the queue once stopped
+                sendExecutor.shutdown();
+            }
+            if (uploadScheduler != null) {
+                uploadScheduler.stop();
+            }
+            if (locationCache != null) {
+                locationCache.stop();
+            }
+        }
+        setPendingSession(null);
+        super.onDestroy();
+    }
 
     /**
      * {@inheritDoc}
@@ -103,6 +155,157 @@ public class VoiceRecorderService extends Service {
         return binder;
     }
 
+    // get the app context, create it on first use
+    private synchronized AndroidAppContext getAppContext() {
+        if (appContext == null) {
+            appContext = new AndroidAppContext(getApplicationContext());
+        }
+        return appContext;
+    }
+
+    // get the upload scheduler, create and start it on first use, once the service is destroyed it's
+    // stopped and only write the recordings into the queue for the next run
+    private synchronized UploadScheduler getUploadScheduler() {
+        if (uploadScheduler == null) {
+            UploadQueue queue = new UploadQueue(new File(getAppContext().getDataDir(), "aimmatic-upload"));
+            uploadScheduler = new UploadScheduler(queue, getApplicationContext(), getAppContext(), new UploadScheduler.Listener() {
+                @Override
+                public void onUploadComplete(UploadQueue.Entry entry, VoiceResponse response) {
+                    BackgroundTask.notifyVoiceSent(listeners, response);
+                }
+            });
+            if (destroyed) {
+                uploadScheduler.stop();
+            } else {
+                uploadScheduler.start();
+            }
+        }
+        return uploadScheduler;
+    }
+
+    // get the location cache, create and start it on first use, it's never started once the service
+    // is destroyed
+    private synchronized LocationCache getLocationCache() {
+        if (locationCache == null) {
+            locationCache = new LocationCache(getApplicationContext());
+            if (destroyed) {
+                locationCache.stop();
+            } else {
+                locationCache.start();
+            }
+        }
+        return locationCache;
+    }
+
+    // get the executor of send tasks, create it on first use, null once the service is destroyed
+    private synchronized ThreadPoolExecutor getSendExecutor() {
+        if (destroyed) {
+            return null;
+        }
+        if (sendExecutor == null) {
+            sendExecutor = newSendExecutor(sendParallelism);
+        }
+        return sendExecutor;
+    }
+
+    /**
+     * Create a bounded executor of send tasks, it run at most the given number of tasks at a time
+     * and reject a task when {@link #SEND_QUEUE_CAPACITY} tasks are already waiting.
+     *
+     * @param parallelism a number of send thread
+     * @return a new executor
+     */
+    static ThreadPoolExecutor newSendExecutor(int parallelism) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, SEND_KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(SEND_QUEUE_CAPACITY), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                return new Thread(r, "voice-sender-" + count.incrementAndGet());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // run a send task, the recording is dropped with an error if too many are waiting
+    private void execute(BackgroundTask task) {
+        ThreadPoolExecutor executor = getSendExecutor();
+        if (executor == null) {
+            // the service is destroyed, the stopped scheduler only write the recording into the queue
+            task.run();
+            return;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (executor.isShutdown()) {
+                task.run();
+            } else {
+                task.reject();
+            }
+        }
+    }
+
+    /**
+     * Set a number of recordings prepared for sending at the same time. A recording that end while
+     * all threads are busy wait in a queue, if too many recordings are waiting the newest one is
+     * dropped and {@link VoiceRecorderCallback#onVoiceSent(VoiceResponse)} is called with an error.
+     * By default, it set to 2.
+     *
+     * @param parallelism a number of send thread, at least 1
+     */
+    public synchronized void setSendParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Send parallelism must be at least 1");
+        }
+        sendParallelism = parallelism;
+        if (sendExecutor != null) {
+            // the maximum size can't be set below the core size
+            if (parallelism > sendExecutor.getMaximumPoolSize()) {
+                sendExecutor.setMaximumPoolSize(parallelism);
+                sendExecutor.setCorePoolSize(parallelism);
+            } else {
+                sendExecutor.setCorePoolSize(parallelism);
+                sendExecutor.setMaximumPoolSize(parallelism);
+            }
+        }
+    }
+
+    /**
+     * Get a number of recordings waiting for a send thread
+     *
+     * @return number of waiting recordings
+     */
+    public synchronized int getSendQueueDepth() {
+        return sendExecutor != null ? sendExecutor.getQueue().size() : 0;
+    }
+
+    /**
+     * Set how recordings made back-to-back are sent. After a recording end, the service wait for the
+     * batch window then send every waiting recording together, up to the batch size, one after
+     * another over the same connection. By default, the window is 500 millisecond and the batch size
+     * is 8.
+     *
+     * @param batchWindow a time in millisecond to wait for more recordings, 0 to send immediately
+     * @param batchSize   a maximum number of recordings sent together, at least 1
+     */
+    public void setUploadBatch(long batchWindow, int batchSize) {
+        getUploadScheduler().setBatch(batchWindow, batchSize);
+    }
+
+    /**
+     * Send long recordings in chunks so a dropped connection only resend the missing chunks. A
+     * recording larger than the chunk size is uploaded with {@link ResumableVoiceSender}, the server
+     * must support the upload session api. It's disabled by default.
+     *
+     * @param chunkSize a chunk size in byte, 0 to disable
+     */
+    public void setResumableUpload(int chunkSize) {
+        getUploadScheduler().setResumableUpload(chunkSize);
+    }
+
     /**
      * Add voice recorder listeners
      *
@@ -177,83 +380,18 @@ public class VoiceRecorderService extends Service {
 
     // internal start record voice
     private void startRecordVoice(final RecordStrategy recordStrategy, VoiceRecorder newVoiceRecorder) {
-        this.currentStrategy = recordStrategy;
-        if (this.voiceRecorder != null) {
-            this.voiceRecorder.stop();
+        RecordSession session = new RecordSession(recordStrategy, newVoiceRecorder);
+        RecordSession previous;
+        synchronized (this) {
+            previous = currentSession;
+            currentSession = session;
         }
-        this.voiceRecorder = newVoiceRecorder;
-        // internal voice recorder listeners
-        VoiceRecorder.EventListener eventListener = new VoiceRecorder.EventListener() {
-
-            private FileOutputStream outfile;
-
-            /**
-             * {@inheritDoc}
-             */
-            @Override
-            public void onRecordStart(AudioMeta audioMeta) {
-                recordSampleRate = VoiceRecorderService.this.voiceRecorder.getSampleRate();
-                for (VoiceRecorder.EventListener listener : listeners) {
-                    listener.onRecordStart(audioMeta);
-                }
-                try {
-                    String filename = "aimmatic-audio." + currentStrategy.getEncoder().extension();
-                    outfile = new FileOutputStream(new File(getCacheDir(), filename));
-                } catch (FileNotFoundException e) {
-                    e.printStackTrace();
-                }
-            }
-
-            /**
-             * {@inheritDoc}
-             */
-            @Override
-            public void onRecording(byte[] data, int size) {
-                for (VoiceRecorder.EventListener listener : listeners) {
-                    listener.onRecording(data, size);
-                }
-                try {
-                    outfile.write(data, 0, size);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-
-            /**
-             * {@inheritDoc}
-             */
-            @Override
-            public void onRecordEnd(byte state) {
-                for (VoiceRecorder.EventListener listener : listeners) {
-                    listener.onRecordEnd(state);
-                }
-                if (outfile != null) {
-                    try {
-                        outfile.close();
-                    } catch (IOException e) {
-                        Log.d(TAG, "unable to close output temporary (wave,flac) file due to " + e.getLocalizedMessage());
-                        VoiceRecorderService.this.voiceRecorder = null;
-                        return;
-                    }
-                }
-                if (state == VoiceRecorder.RECORD_END_BY_USER && stopPolicy == RecordStrategy.POLICY_CANCELED) {
-                    String filename = "aimmatic-audio." + recordStrategy.getEncoder().extension();
-                    File file = new File(getCacheDir(), filename);
-                    // delete the file if user canceled
-                    file.delete();
-                } else if ((state == VoiceRecorder.RECORD_END_BY_IDLE && recordStrategy.getSpeechTimeoutPolicies() == RecordStrategy.POLICY_SEND_IMMEDIATELY) ||
-                        (state == VoiceRecorder.RECORD_END_BY_MAX && recordStrategy.getMaxRecordDurationPolicies() == RecordStrategy.POLICY_SEND_IMMEDIATELY) ||
-                        (state == VoiceRecorder.RECORD_END_BY_USER && stopPolicy == RecordStrategy.POLICY_SEND_IMMEDIATELY)) {
-                    BackgroundTask bt = new BackgroundTask(recordSampleRate, recordStrategy, getApplicationContext(), listeners);
-                    bt.start();
-                    bt.sendVoice();
-                }
-                voiceRecorder = null;
-            }
-        };
-        this.voiceRecorder.setRecorderCallback(eventListener);
-        Log.d(TAG, "start voice recorder thread");
-        this.voiceRecorder.start();
+        if (previous != null) {
+            previous.recorder.stop();
+        }
+        newVoiceRecorder.setRecorderCallback(session);
+        Log.d(TAG, "start voice recorder thread of session " + session.id);
+        newVoiceRecorder.start();
     }
 
     /**
@@ -277,29 +415,69 @@ public class VoiceRecorderService extends Service {
         if (policy == RecordStrategy.POLICY_USER_CHOICE) {
             throw new IllegalArgumentException("Policy can only be either POLICY_CANCELED or POLICY_SEND_IMMEDIATELY");
         }
-        if (voiceRecorder != null) {
-            this.stopPolicy = policy;
-            voiceRecorder.stop();
-            voiceRecorder = null;
-            Log.d(TAG, "stop voice recorder thread");
+        RecordSession session;
+        synchronized (this) {
+            session = currentSession;
+            currentSession = null;
+        }
+        if (session != null) {
+            session.stopPolicy = policy;
+            session.recorder.stop();
+            Log.d(TAG, "stop voice recorder thread of session " + session.id);
         }
     }
 
     /**
-     * Inform user's choice over the existing record
+     * Inform user's choice over the last recording waiting for it. A new recording can already be
+     * running, it's not affected by the choice.
      *
      * @param policy a policy to define user's choice
      */
     public void onUserChoice(byte policy) {
+        RecordSession session;
+        synchronized (this) {
+            session = pendingSession;
+            pendingSession = null;
+        }
+        if (session == null) {
+            return;
+        }
         if (policy == RecordStrategy.POLICY_SEND_IMMEDIATELY) {
-            BackgroundTask bt = new BackgroundTask(recordSampleRate, this.currentStrategy, getApplicationContext(), listeners);
-            bt.start();
-            bt.sendVoice();
-        } else if (policy == RecordStrategy.POLICY_CANCELED) {
-            String filename = "aimmatic-audio." + this.currentStrategy.getEncoder().extension();
-            File file = new File(getCacheDir(), filename);
-            // delete the file if user canceled
-            file.delete();
+            session.send();
+        } else {
+            // drop the audio if user canceled
+            session.discard();
+        }
+    }
+
+    // keep a session until user's choice, an older session still waiting is dropped
+    private void setPendingSession(RecordSession session) {
+        RecordSession previous;
+        synchronized (this) {
+            previous = pendingSession;
+            pendingSession = session;
+        }
+        if (previous != null) {
+            previous.discard();
+        }
+    }
+
+    // forget the session if it's still the current one
+    private synchronized void endSession(RecordSession session) {
+        if (currentSession == session) {
+            currentSession = null;
+        }
+    }
+
+    // delete the recordings left in the cache by a previous run, no session is running yet
+    private void deleteStaleRecordings() {
+        File[] files = getCacheDir().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(RECORD_FILE_PREFIX)) {
+                    file.delete();
+                }
+            }
         }
     }
 
@@ -332,112 +510,346 @@ public class VoiceRecorderService extends Service {
 
     }
 
-    private static class BackgroundTask extends HandlerThread {
+    // one recording, its audio has its own buffer and cache file so a new session can record while the
+    // audio of the previous one is being sent
+    private class RecordSession extends VoiceRecorder.EventListener {
+
+        final String id = UUID.randomUUID().toString();
+        final RecordStrategy recordStrategy;
+        final VoiceRecorder recorder;
+        // policy given when user stop the recording, read by the encoder thread
+        volatile byte stopPolicy;
+        // recording state, only use by the encoder thread until the session end
+        private int sampleRate;
+        private RecordingBuffer recording;
+        private StreamingUpload streamingUpload;
+
+        RecordSession(RecordStrategy recordStrategy, VoiceRecorder recorder) {
+            this.recordStrategy = recordStrategy;
+            this.recorder = recorder;
+        }
 
-        private int recordSampleRate;
-        private RecordStrategy recordStrategy;
-        private Context ctx;
-        private ArrayList<VoiceRecorderCallback> listeners;
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onRecordStart(AudioMeta audioMeta) {
+            sampleRate = recorder.getSampleRate();
+            for (VoiceRecorder.EventListener listener : listeners) {
+                listener.onRecordStart(audioMeta);
+            }
+            String filename = RECORD_FILE_PREFIX + "-" + id + "." + recordStrategy.getEncoder().extension();
+            recording = new RecordingBuffer(new File(getCacheDir(), filename), recordStrategy.getMemoryBufferSize());
+            if (recordStrategy.isStreamingUpload()) {
+                streamingUpload = new StreamingUpload(recordStrategy, sampleRate, recording.getName());
+            }
+        }
 
-        BackgroundTask(int sampleRate, RecordStrategy recordStrategy, Context ctx, ArrayList<VoiceRecorderCallback> listener) {
-            super("voice-sender");
-            this.recordSampleRate = sampleRate;
-            this.recordStrategy = recordStrategy;
-            this.ctx = ctx;
-            this.listeners = listener;
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onRecording(byte[] data, int size) {
+            for (VoiceRecorder.EventListener listener : listeners) {
+                listener.onRecording(data, size);
+            }
+            try {
+                recording.write(data, 0, size);
+            } catch (IOException e) {
+                Log.d(TAG, "unable to write voice data due to " + e.getLocalizedMessage());
+            }
+            if (streamingUpload != null) {
+                streamingUpload.write(data, size);
+            }
         }
 
-        public void sendVoice() {
-            new Handler(getLooper()).post(new Runnable() {
-                @Override
-                public void run() {
-                    doInBackground();
-                    quit();
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onRecordEnd(byte state) {
+            for (VoiceRecorder.EventListener listener : listeners) {
+                listener.onRecordEnd(state);
+            }
+            endSession(this);
+            if (recording == null) {
+                return;
+            }
+            try {
+                recording.close();
+            } catch (IOException e) {
+                Log.d(TAG, "unable to close output temporary (wave,flac) file due to " + e.getLocalizedMessage());
+                if (streamingUpload != null) {
+                    streamingUpload.cancel();
                 }
-            });
+                discard();
+                return;
+            }
+            if (state == VoiceRecorder.RECORD_END_BY_USER && stopPolicy == RecordStrategy.POLICY_CANCELED) {
+                if (streamingUpload != null) {
+                    streamingUpload.cancel();
+                }
+                // drop the audio if user canceled
+                discard();
+            } else if ((state == VoiceRecorder.RECORD_END_BY_IDLE && recordStrategy.getSpeechTimeoutPolicies() == RecordStrategy.POLICY_SEND_IMMEDIATELY) ||
+                    (state == VoiceRecorder.RECORD_END_BY_MAX && recordStrategy.getMaxRecordDurationPolicies() == RecordStrategy.POLICY_SEND_IMMEDIATELY) ||
+                    (state == VoiceRecorder.RECORD_END_BY_USER && stopPolicy == RecordStrategy.POLICY_SEND_IMMEDIATELY)) {
+                if (streamingUpload != null) {
+                    streamingUpload.finish(recording);
+                    recording = null;
+                } else {
+                    send();
+                }
+            } else {
+                // wait for user's choice, the recorded audio will be sent then
+                if (streamingUpload != null) {
+                    streamingUpload.cancel();
+                }
+                setPendingSession(this);
+            }
+            streamingUpload = null;
+        }
+
+        // send the recorded audio, the buffer is released once it's sent or queued
+        void send() {
+            RecordingBuffer audio;
+            synchronized (this) {
+                audio = recording;
+                recording = null;
+            }
+            if (audio != null) {
+                execute(new BackgroundTask(audio, sampleRate, recordStrategy, getLocationCache(), getUploadScheduler(), listeners));
+            }
         }
 
-        private void doInBackground() {
-            // set send the file
-            String filename = "aimmatic-audio." + recordStrategy.getEncoder().extension();
-            File file = new File(ctx.getCacheDir(), filename);
-            final File sendFile = new File(ctx.getCacheDir(), System.currentTimeMillis() + "");
-            if (file.renameTo(sendFile)) {
-                int permission = ContextCompat.checkSelfPermission(ctx, Manifest.permission.ACCESS_FINE_LOCATION);
-                double lat = 0;
-                double lng = 0;
-                if (permission == PackageManager.PERMISSION_GRANTED) {
-                    LocationManager lm = (LocationManager) ctx.getSystemService(Context.LOCATION_SERVICE);
-                    if (lm != null) {
-                        Criteria criteria = new Criteria();
-                        criteria.setAccuracy(Criteria.ACCURACY_FINE);
-                        criteria.setPowerRequirement(Criteria.POWER_MEDIUM);
-                        final String provider = lm.getBestProvider(criteria, true);
-                        Location location = lm.getLastKnownLocation(provider);
-                        if (location != null) {
-                            lat = location.getLatitude();
-                            lng = location.getLongitude();
-                        } else {
-                            lm.requestSingleUpdate(provider, new LocationListener() {
-                                @Override
-                                public void onLocationChanged(Location location) {
-                                    if (location != null) {
-                                        send(sendFile, location.getLongitude(), location.getLongitude());
-                                    }
-                                }
-
-                                @Override
-                                public void onStatusChanged(String provider, int status, Bundle extras) {
-                                }
-
-                                @Override
-                                public void onProviderEnabled(String provider) {
-                                }
-
-                                @Override
-                                public void onProviderDisabled(String provider) {
-                                }
-                            }, getLooper());
-                        }
-                    }
+        // drop the recorded audio
+        void discard() {
+            RecordingBuffer audio;
+            synchronized (this) {
+                audio = recording;
+                recording = null;
+            }
+            if (audio != null) {
+                audio.release();
+            }
+        }
+
+    }
+
+    // upload the encoded audio while recording, the recorded audio is sent instead if the stream failed
+    private class StreamingUpload implements Callback {
+
+        private final RecordStrategy recordStrategy;
+        private final int sampleRate;
+        private final double lat;
+        private final double lng;
+        private final StreamingAudioBody body;
+        private final Call call;
+        // state shared by the encoder thread and the http thread, guarded by this
+        private boolean failed;
+        // true once the encoder has written the whole audio
+        private boolean finished;
+        private RecordingBuffer recording;
+
+        StreamingUpload(RecordStrategy recordStrategy, int sampleRate, String filename) {
+            this.recordStrategy = recordStrategy;
+            this.sampleRate = sampleRate;
+            Location location = getLocationCache().get();
+            lat = location != null ? location.getLatitude() : 0;
+            lng = location != null ? location.getLongitude() : 0;
+            body = new StreamingAudioBody(recordStrategy.getEncoder().contentType());
+            VoiceSender voiceSender = new VoiceSender(getAppContext());
+            call = voiceSender.newVoiceCall(body, filename,
+                    recordStrategy.getLanguage().getBcp47Code(), lat, lng, sampleRate);
+            call.enqueue(this);
+        }
+
+        // append the encoded data, on failure the stream is dropped and recording continue
+        void write(byte[] data, int size) {
+            synchronized (this) {
+                if (failed) {
+                    return;
                 }
-                send(sendFile, lat, lng);
+            }
+            try {
+                body.write(data, size);
+            } catch (IOException e) {
+                Log.d(TAG, "unable to stream voice data due to " + e.getLocalizedMessage());
+                synchronized (this) {
+                    failed = true;
+                }
+                call.cancel();
+                body.abort();
             }
         }
 
-        private void send(File sendFile, double lat, double lng) {
-            VoiceResponse voiceResponse = null;
+        // end the stream, the recorded audio is kept until the server response
+        void finish(RecordingBuffer recording) {
+            synchronized (this) {
+                this.recording = recording;
+                finished = true;
+            }
             try {
-                VoiceSender voiceSender = new VoiceSender(new AndroidAppContext(ctx));
-                MediaType mediaType = recordStrategy.getEncoder().contentType();
-                if (mediaType == Resources.MEDIA_TYPE_WAVE) {
-                    Log.d(TAG, "sending wave voice data");
-                } else {
-                    Log.d(TAG, "sending flac voice data");
+                body.close();
+            } catch (IOException e) {
+                Log.d(TAG, "unable to end voice stream due to " + e.getLocalizedMessage());
+                synchronized (this) {
+                    failed = true;
                 }
-                Response response = voiceSender.sentVoice(sendFile, mediaType, recordStrategy.getLanguage().getBcp47Code(), lat, lng, recordSampleRate);
-                if (response.code() >= 400) {
-                    voiceResponse = new VoiceResponse(null, new Status(response.code(), "unable to send audio to server", null));
+            }
+            sendFromCacheIfFailed();
+        }
+
+        // drop the stream, the recorded audio is left to the caller
+        void cancel() {
+            synchronized (this) {
+                failed = true;
+                recording = null;
+            }
+            call.cancel();
+            body.abort();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onFailure(Call call, IOException e) {
+            Log.d(TAG, "unable to stream voice data to backend due to " + e.getLocalizedMessage());
+            synchronized (this) {
+                failed = true;
+            }
+            body.abort();
+            sendFromCacheIfFailed();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+            RecordingBuffer sent = null;
+            boolean early = false;
+            synchronized (this) {
+                if (failed) {
+                    // the stream has been canceled
+                    response.close();
                     return;
                 }
-                if (response.body() != null) {
-                    Gson gson = new GsonBuilder().create();
-                    String body = response.body().string();
-                    voiceResponse = gson.fromJson(body, VoiceResponse.class);
+                if (!finished) {
+                    // the server answer before the whole audio was written, the encoder may still be
+                    // writing the recording so drop the stream and send the recording once it end
+                    failed = true;
+                    early = true;
+                } else {
+                    sent = recording;
+                    recording = null;
                 }
-            } catch (IOException e) {
-                Log.d(TAG, "unable to send voice data to backend due to " + e.getLocalizedMessage());
-                voiceResponse = new VoiceResponse(null, new Status(-1, e.getMessage(), null));
+            }
+            if (early) {
+                Log.d(TAG, "voice stream answered with " + response.code() + " before it ended");
+                response.close();
+                body.abort();
+                return;
+            }
+            if (sent != null && UploadScheduler.isRetryable(response.code())) {
+                // the server can't take it now, keep the recording in the queue until it does
+                response.close();
+                getUploadScheduler().retryLater(sent, recordStrategy.getEncoder().contentType(),
+                        recordStrategy.getLanguage().getBcp47Code(), lat, lng, sampleRate);
+                return;
+            }
+            try {
+                BackgroundTask.notifyVoiceSent(listeners, UploadScheduler.readVoiceResponse(response));
             } finally {
-                if (listeners != null) {
-                    if (voiceResponse == null) {
-                        voiceResponse = new VoiceResponse(null, new Status(-1, "unable to send audio to server", null));
-                    }
-                    for (VoiceRecorderCallback vrc : this.listeners) {
-                        vrc.onVoiceSent(voiceResponse);
-                    }
+                if (sent != null) {
+                    sent.release();
+                }
+            }
+        }
+
+        // send the recorded audio once, only after the recording end and the stream failed
+        private void sendFromCacheIfFailed() {
+            RecordingBuffer failedRecording;
+            synchronized (this) {
+                if (!failed || recording == null) {
+                    return;
+                }
+                failedRecording = recording;
+                recording = null;
+            }
+            execute(new BackgroundTask(failedRecording, sampleRate, recordStrategy, getLocationCache(), getUploadScheduler(), listeners));
+        }
+
+    }
+
+    // send a recording on the service executor
+    private static class BackgroundTask implements Runnable {
+
+        private RecordingBuffer recording;
+        private int recordSampleRate;
+        private RecordStrategy recordStrategy;
+        private LocationCache locationCache;
+        private UploadScheduler uploadScheduler;
+        private ArrayList<VoiceRecorderCallback> listeners;
+
+        BackgroundTask(RecordingBuffer recording, int sampleRate, RecordStrategy recordStrategy, LocationCache locationCache, UploadScheduler uploadScheduler, ArrayList<VoiceRecorderCallback> listener) {
+            this.recording = recording;
+            this.recordSampleRate = sampleRate;
+            this.recordStrategy = recordStrategy;
+            this.locationCache = locationCache;
+            this.uploadScheduler = uploadScheduler;
+            this.listeners = listener;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            double lat = 0;
+            double lng = 0;
+            Location location = locationCache.get();
+            if (location != null) {
+                lat = location.getLatitude();
+                lng = location.getLongitude();
+            }
+            send(recording, lat, lng);
+        }
+
+        // the executor is full or shut down, drop the recording
+        void reject() {
+            Log.d(TAG, "too many voice data waiting to be sent");
+            notifyVoiceSent(listeners, new VoiceResponse(null, new Status(-1, "too many audio waiting to be sent", null)));
+            recording.release();
+        }
+
+        // hand the recording to the scheduler, it send it and retry until it's accepted
+        private void send(RecordingBuffer recording, double lat, double lng) {
+            MediaType mediaType = recordStrategy.getEncoder().contentType();
+            if (mediaType == Resources.MEDIA_TYPE_WAVE) {
+                Log.d(TAG, "send wave voice data");
+            } else {
+                Log.d(TAG, "send flac voice data");
+            }
+            try {
+                uploadScheduler.send(recording, mediaType, recordStrategy.getLanguage().getBcp47Code(), lat, lng, recordSampleRate);
+            } catch (IOException e) {
+                Log.d(TAG, "unable to send voice data due to " + e.getLocalizedMessage());
+                notifyVoiceSent(listeners, new VoiceResponse(null, new Status(-1, e.getMessage(), null)));
+                recording.release();
+            }
+        }
+
+        // inform the listeners the result of sending voice
+        static void notifyVoiceSent(ArrayList<VoiceRecorderCallback> listeners, VoiceResponse voiceResponse) {
+            if (listeners != null) {
+                if (voiceResponse == null) {
+                    voiceResponse = new VoiceResponse(null, new Status(-1, "unable to send audio to server", null));
+                }
+                for (VoiceRecorderCallback vrc : listeners) {
+                    vrc.onVoiceSent(voiceResponse);
                 }
-                sendFile.delete();
             }
         }
 
@@ -0,0 +1,165 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.detector;
+
+import com.aimmatic.natural.voice.encoder.AudioMeta;
+
+import java.nio.ShortBuffer;
+
+/**
+ * A voice activity detector based on short time energy and zero crossing rate. The audio is split
+ * into 10ms frames and a frame is voice when its energy is well above an adaptive noise floor.
+ * Noise like frames, which have a high zero crossing rate, require twice the energy. The noise floor
+ * is estimated from the first 100ms then follow the background noise, it fall quickly and rise slowly
+ * so a loud room does not trigger the recording and a quiet speaker is still heard in a quiet room.
+ * If the user is already speaking during the first 100ms, the floor drops to the background noise at
+ * the first pause.
+ * The detector use a constant amount of memory whatever the size of the buffer.
+ */
+public class EnergyVoiceActivityDetector implements VoiceActivityDetector {
+
+    // frame length in millisecond
+    private static final int FRAME_MILLIS = 10;
+    // number of frame use to estimate the initial noise floor
+    private static final int CALIBRATION_FRAMES = 10;
+    // number of consecutive voice frame before the detector report voice
+    private static final int ONSET_FRAMES = 3;
+    // number of frame still report as voice after the last voice frame
+    private static final int HANGOVER_FRAMES = 20;
+    // a zero crossing rate above this value is more likely noise than voiced speech
+    private static final double NOISE_ZERO_CROSSING_RATE = 0.5;
+    // noise floor adaptation rate per frame
+    private static final double FLOOR_FALL_RATE = 0.2;
+    private static final double FLOOR_RISE_RATE = 0.02;
+    private static final double FLOOR_RISE_RATE_IN_VOICE = 0.001;
+
+    private final double energyRatio;
+    private final double minEnergy;
+
+    private int frameSize;
+    // current frame state
+    private long sumSquare;
+    private int zeroCrossing;
+    private int sampleCount;
+    private int lastSample;
+    // detector state
+    private double noiseFloor;
+    private int calibrationFrames;
+    private int voiceFrames;
+    private int hangover;
+
+    /**
+     * Create a detector with default sensitivity, a frame must be 6dB above the noise floor and
+     * have a RMS amplitude of at least 100.
+     */
+    public EnergyVoiceActivityDetector() {
+        this(4, 100);
+    }
+
+    /**
+     * Create a detector
+     *
+     * @param energyRatio  a ratio between the frame energy and the noise floor energy above which
+     *                     the frame is voice. A higher value is less sensitive.
+     * @param minAmplitude a minimum RMS amplitude of a voice frame, from 0 to 32767
+     */
+    public EnergyVoiceActivityDetector(double energyRatio, int minAmplitude) {
+        if (energyRatio <= 1) {
+            throw new IllegalArgumentException("energyRatio must be greater than 1");
+        }
+        this.energyRatio = energyRatio;
+        this.minEnergy = (double) minAmplitude * minAmplitude;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void initialize(AudioMeta audioMeta) {
+        frameSize = Math.max(1, audioMeta.getSampleRate() * audioMeta.getChannel() * FRAME_MILLIS / 1000);
+        sumSquare = 0;
+        zeroCrossing = 0;
+        sampleCount = 0;
+        lastSample = 0;
+        noiseFloor = 0;
+        calibrationFrames = 0;
+        voiceFrames = 0;
+        hangover = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isHearingVoice(ShortBuffer samples) {
+        if (frameSize == 0) {
+            throw new IllegalStateException("initialize has not been called");
+        }
+        boolean voice = false;
+        for (int i = 0, n = samples.limit(); i < n; i++) {
+            int sample = samples.get(i);
+            sumSquare += sample * sample;
+            if ((sample ^ lastSample) < 0) {
+                zeroCrossing++;
+            }
+            lastSample = sample;
+            if (++sampleCount == frameSize) {
+                voice |= endFrame();
+            }
+        }
+        return voice;
+    }
+
+    // classify the current frame and update the noise floor
+    private boolean endFrame() {
+        double energy = (double) sumSquare / sampleCount;
+        double zeroCrossingRate = (double) zeroCrossing / sampleCount;
+        sumSquare = 0;
+        zeroCrossing = 0;
+        sampleCount = 0;
+        if (calibrationFrames < CALIBRATION_FRAMES) {
+            // the lowest frame energy is the best guess of the background noise
+            noiseFloor = calibrationFrames == 0 ? energy : Math.min(noiseFloor, energy);
+            calibrationFrames++;
+            return false;
+        }
+        double threshold = Math.max(noiseFloor * energyRatio, minEnergy);
+        if (zeroCrossingRate > NOISE_ZERO_CROSSING_RATE) {
+            threshold *= 2;
+        }
+        boolean voiceFrame = energy > threshold;
+        if (voiceFrame) {
+            noiseFloor += (energy - noiseFloor) * FLOOR_RISE_RATE_IN_VOICE;
+            voiceFrames++;
+        } else if (energy * energyRatio < noiseFloor) {
+            // a frame this quiet means the floor was learned from speech, e.g. the user was already
+            // talking during the calibration, the floor drops to it at once
+            noiseFloor = energy;
+            voiceFrames = 0;
+        } else {
+            noiseFloor += (energy - noiseFloor) * (energy < noiseFloor ? FLOOR_FALL_RATE : FLOOR_RISE_RATE);
+            voiceFrames = 0;
+        }
+        if (voiceFrames >= ONSET_FRAMES) {
+            hangover = HANGOVER_FRAMES;
+            return true;
+        }
+        if (hangover > 0) {
+            hangover--;
+            return true;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.detector;
+
+import com.aimmatic.natural.voice.encoder.AudioMeta;
+
+import java.nio.ShortBuffer;
+
+/**
+ * A voice activity detector decide whether the captured audio contain speech. The recording start
+ * when the detector first hear the voice and end when it stop hearing the voice longer than the speech timeout.
+ * The detector is called from the encoder thread for every audio record buffer in order.
+ */
+public interface VoiceActivityDetector {
+
+    /**
+     * Initialize the detector before a new recording start. Any state of the previous recording
+     * must be reset.
+     *
+     * @param audioMeta an audio meta data of the captured audio
+     */
+    void initialize(AudioMeta audioMeta);
+
+    /**
+     * Detect if the samples contain voice. The samples must be read with absolute get, the position
+     * of the buffer must not be changed.
+     *
+     * @param samples a pcm 16bit samples from index 0 to the buffer limit
+     * @return true if voice is heard in the samples
+     */
+    boolean isHearingVoice(ShortBuffer samples);
+
+}
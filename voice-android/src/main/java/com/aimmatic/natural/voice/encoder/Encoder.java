@@ -13,6 +13,8 @@ limitations under the License.
 
 package com.aimmatic.natural.voice.encoder;
 
+import java.nio.ByteBuffer;
+
 import okhttp3.MediaType;
 
 /**
@@ -25,6 +27,9 @@ public abstract class Encoder {
      */
     protected EncodingReady encodingReady;
 
+    // reusable copy of direct buffer for encoder that only support byte array
+    private byte[] arrayBuffer;
+
     /**
      * Set a new encoder
      *
@@ -50,6 +55,24 @@ public abstract class Encoder {
      */
     public abstract void encode(byte[] buffer, int size) throws EncodingException;
 
+    /**
+     * Encode the wav pcm 16bit data in native byte order into an another format. The recorder read
+     * the audio directly into a direct byte buffer, encoder that can read the buffer without copy
+     * should override this method. By default, the data is copied into a reusable byte array and pass to
+     * {@link #encode(byte[], int)}. The position of the buffer may be changed by this method.
+     *
+     * @param buffer a wav pcm 16bit buffer data from position 0
+     * @param size   a size of data in byte
+     */
+    public void encode(ByteBuffer buffer, int size) throws EncodingException {
+        if (arrayBuffer == null || arrayBuffer.length < size) {
+            arrayBuffer = new byte[size];
+        }
+        buffer.position(0);
+        buffer.get(arrayBuffer, 0, size);
+        encode(arrayBuffer, size);
+    }
+
     /**
      * Finalize encoder information that the encoding operation is done, we should release any resource
      * at this point or depose it. Such as C or C++ resource should released.
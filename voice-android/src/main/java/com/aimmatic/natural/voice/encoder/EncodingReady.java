@@ -19,9 +19,11 @@ package com.aimmatic.natural.voice.encoder;
 public interface EncodingReady {
 
     /**
-     * Called when encode is done
+     * Called when encode is done. The buffer may be reused by the encoder once this method return,
+     * copy the data if it's needed afterward.
      *
-     * @param buffer a new buffer encoded data
+     * @param buffer a buffer of encoded data
+     * @param size   size of data in byte
      */
     void onEncoded(byte[] buffer, int size);
 
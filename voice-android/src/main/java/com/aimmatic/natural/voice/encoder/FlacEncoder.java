@@ -16,16 +16,41 @@ package com.aimmatic.natural.voice.encoder;
 import com.aimmatic.natural.voice.android.LibFlac;
 import com.aimmatic.natural.voice.rest.Resources;
 
+import java.nio.ByteBuffer;
+
 import okhttp3.MediaType;
 
 /**
  * A Flac audio encoder, it's encode from wav to flac format.
- * Flac naturally support streaming encoding
+ * Flac naturally support streaming encoding.
+ * <p>
+ * In adaptive mode, the encoder measure the time spent encoding against the duration of the audio
+ * and move the compression level within the given bounds. A flac stream can't change its level once
+ * started so the new level is used from the next recording.
  */
 public class FlacEncoder extends Encoder {
 
+    // highest and lowest compression level support by libFLAC
+    private static final int MIN_COMPRESSION = 0;
+    private static final int MAX_COMPRESSION = 8;
+    // encode time as a fraction of audio duration above which the level is step down
+    static final double HIGH_LOAD = 0.5;
+    // encode time as a fraction of audio duration below which the level is step up
+    static final double LOW_LOAD = 0.15;
+    // minimum audio duration in millisecond before the measured load is trusted
+    private static final long MIN_MEASURE_MILLIS = 1000;
+
     private LibFlac libFlac;
     private int compression;
+    private boolean verify = true;
+    private int blockSize;
+    private boolean adaptive;
+    private int minCompression = MIN_COMPRESSION;
+    private int maxCompression = MAX_COMPRESSION;
+    // measurement of the current recording
+    private int bytePerSecond;
+    private long encodeNanos;
+    private long encodeBytes;
 
     /**
      * Create Flac encoder with default compression to 5
@@ -43,6 +68,62 @@ public class FlacEncoder extends Encoder {
         this.compression = compression;
     }
 
+    /**
+     * Set whether the encoder decode each frame and compare it with the input. Verify is enabled by
+     * default and roughly double the encode time. It must be set before the recording start.
+     *
+     * @param verify true to verify the encoded data
+     * @return self object
+     */
+    public FlacEncoder setVerify(boolean verify) {
+        this.verify = verify;
+        return this;
+    }
+
+    /**
+     * Set the number of sample per flac frame. By default, the block size is chosen by the compression
+     * level. It must be set before the recording start.
+     *
+     * @param blockSize a block size from 16 to 65535, or 0 to use the default
+     * @return self object
+     */
+    public FlacEncoder setBlockSize(int blockSize) {
+        if (blockSize != 0 && (blockSize < 16 || blockSize > 65535)) {
+            throw new IllegalArgumentException("block size must be 0 or between 16 and 65535");
+        }
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    /**
+     * Enable adaptive compression. After each recording the encoder compare the time spent encoding
+     * with the duration of the audio, the compression level is decreased when the encoder use more than
+     * half of the real time and increased when it use less than 15 percent, within the given bounds.
+     *
+     * @param minCompression a lowest compression level, from 0 to 8
+     * @param maxCompression a highest compression level, from minCompression to 8
+     * @return self object
+     */
+    public FlacEncoder setAdaptiveCompression(int minCompression, int maxCompression) {
+        if (minCompression < MIN_COMPRESSION || maxCompression > MAX_COMPRESSION || minCompression > maxCompression) {
+            throw new IllegalArgumentException("compression bounds must be between 0 and 8 and min must not be greater than max");
+        }
+        this.adaptive = true;
+        this.minCompression = minCompression;
+        this.maxCompression = maxCompression;
+        this.compression = Math.max(minCompression, Math.min(maxCompression, compression));
+        return this;
+    }
+
+    /**
+     * Get the compression level use for the next recording
+     *
+     * @return a compression level from 0 to 8
+     */
+    public int getCompression() {
+        return compression;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -57,7 +138,11 @@ public class FlacEncoder extends Encoder {
                 }
             });
         }
-        libFlac.initialize(audioMeta.getSampleRate(), audioMeta.getChannel(), audioMeta.getBitPerSecond(), compression);
+        libFlac.initialize(audioMeta.getSampleRate(), audioMeta.getChannel(), audioMeta.getBitPerSecond(),
+                compression, verify, blockSize);
+        bytePerSecond = audioMeta.getSampleRate() * audioMeta.getChannel() * audioMeta.getBitPerSecond() / 8;
+        encodeNanos = 0;
+        encodeBytes = 0;
     }
 
     /**
@@ -70,7 +155,39 @@ public class FlacEncoder extends Encoder {
         if (libFlac == null) {
             throw new IllegalStateException("initialize has not been called");
         }
+        if (!adaptive) {
+            libFlac.encode(buffer, size);
+            return;
+        }
+        long start = System.nanoTime();
+        libFlac.encode(buffer, size);
+        encodeNanos += System.nanoTime() - start;
+        encodeBytes += size;
+    }
+
+    /**
+     * Encode pcm 16bit into flac audio format. A direct buffer is pass to the native encoder without copy.
+     *
+     * @param buffer a wav pcm 16bit buffer data from position 0
+     * @param size   a size of data in byte
+     */
+    @Override
+    public void encode(ByteBuffer buffer, int size) throws EncodingException {
+        if (!buffer.isDirect()) {
+            super.encode(buffer, size);
+            return;
+        }
+        if (libFlac == null) {
+            throw new IllegalStateException("initialize has not been called");
+        }
+        if (!adaptive) {
+            libFlac.encode(buffer, size);
+            return;
+        }
+        long start = System.nanoTime();
         libFlac.encode(buffer, size);
+        encodeNanos += System.nanoTime() - start;
+        encodeBytes += size;
     }
 
     /**
@@ -79,12 +196,42 @@ public class FlacEncoder extends Encoder {
     @Override
     public void release() {
         if (libFlac != null) {
-            libFlac.finish();
+            if (adaptive) {
+                long start = System.nanoTime();
+                libFlac.finish();
+                encodeNanos += System.nanoTime() - start;
+                long audioMillis = bytePerSecond > 0 ? encodeBytes * 1000 / bytePerSecond : 0;
+                if (audioMillis >= MIN_MEASURE_MILLIS) {
+                    double load = encodeNanos / (audioMillis * 1e6);
+                    compression = adjustCompression(compression, load, minCompression, maxCompression);
+                }
+            } else {
+                libFlac.finish();
+            }
             libFlac.release();
             libFlac = null;
         }
     }
 
+    /**
+     * Choose the compression level of the next recording
+     *
+     * @param compression current compression level
+     * @param load        encode time divide by audio duration of the last recording
+     * @param min         lowest compression level
+     * @param max         highest compression level
+     * @return the next compression level
+     */
+    static int adjustCompression(int compression, double load, int min, int max) {
+        if (load > HIGH_LOAD && compression > min) {
+            return compression - 1;
+        }
+        if (load < LOW_LOAD && compression < max) {
+            return compression + 1;
+        }
+        return compression;
+    }
+
     /**
      * Get flac file extension
      *
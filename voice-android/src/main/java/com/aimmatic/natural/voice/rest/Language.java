@@ -19,15 +19,25 @@ import android.support.annotation.VisibleForTesting;
 
 import com.aimmatic.natural.core.rest.AndroidAppContext;
 import com.aimmatic.natural.core.rest.AppContext;
-import com.aimmatic.natural.voice.rest.response.LangResponse;
-import com.google.gson.Gson;
+import com.aimmatic.natural.core.rest.Json;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import okhttp3.Call;
 import okhttp3.Callback;
@@ -35,13 +45,12 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
-import okio.Buffer;
-import okio.BufferedSource;
 
 /**
  * This class private all support language for natural voice processing
  */
 
+@JsonAdapter(Language.Adapter.class)
 public class Language {
 
     @SerializedName("name")
@@ -56,60 +65,73 @@ public class Language {
     @SerializedName("nlplang")
     private String langCode;
 
-    private static Language[] supportLang;
-
-    private static void initialDefaultLanguages() {
-        String allLang = "Deutsch (Deutschland),German (Germany),de-DE,de\n" +
-                "English (United States),English (United States),en-US,en\n" +
-                "English (Philippines),English (Philippines),en-PH,en\n" +
-                "English (Australia),English (Australia),en-AU,en\n" +
-                "English (Canada),English (Canada),en-CA,en\n" +
-                "English (Ghana),English (Ghana),en-GH,en\n" +
-                "English (Great Britain),English (United Kingdom),en-GB,en\n" +
-                "English (India),English (India),en-IN,en\n" +
-                "English (Ireland),English (Ireland),en-IE,en\n" +
-                "English (Kenya),English (Kenya),en-KE,en\n" +
-                "English (New Zealand),English (New Zealand),en-NZ,en\n" +
-                "English (Nigeria),English (Nigeria),en-NG,en\n" +
-                "English (South Africa),English (South Africa),en-ZA,en\n" +
-                "English (Tanzania),English (Tanzania),en-TZ,en\n" +
-                "Español (Argentina),Spanish (Argentina),es-AR,es\n" +
-                "Español (Bolivia),Spanish (Bolivia),es-BO,es\n" +
-                "Español (Chile),Spanish (Chile),es-CL,es\n" +
-                "Español (Colombia),Spanish (Colombia),es-CO,es\n" +
-                "Español (Costa Rica),Spanish (Costa Rica),es-CR,es\n" +
-                "Español (Ecuador),Spanish (Ecuador),es-EC,es\n" +
-                "Español (El Salvador),Spanish (El Salvador),es-SV,es\n" +
-                "Español (España),Spanish (Spain),es-ES,es\n" +
-                "Español (Estados Unidos),Spanish (United States),es-US,es\n" +
-                "Español (Guatemala),Spanish (Guatemala),es-GT,es\n" +
-                "Español (Honduras),Spanish (Honduras),es-HN,es\n" +
-                "Español (México),Spanish (Mexico),es-MX,es\n" +
-                "Español (Nicaragua),Spanish (Nicaragua),es-NI,es\n" +
-                "Español (Panamá),Spanish (Panama),es-PA,es\n" +
-                "Español (Paraguay),Spanish (Paraguay),es-PY,es\n" +
-                "Español (Perú),Spanish (Peru),es-PE,es\n" +
-                "Español (Puerto Rico),Spanish (Puerto Rico),es-PR,es\n" +
-                "Español (República Dominicana),Spanish (Dominican Republic),es-DO,es\n" +
-                "Español (Uruguay),Spanish (Uruguay),es-UY,es\n" +
-                "Español (Venezuela),Spanish (Venezuela),es-VE,es\n" +
-                "Français (France),French (France),fr-FR,fr\n" +
-                "Français (Canada),French (Canada),fr-CA,fr\n" +
-                "Italiano (Italia),Italian (Italy),it-IT,it\n" +
-                "日本語（日本）,Japanese (Japan),ja-JP,ja\n" +
-                "한국어 (대한민국),Korean (South Korea),ko-KR,ko\n" +
-                "Português (Brasil),Portuguese (Brazil),pt-BR,pt\n" +
-                "Português (Portugal),Portuguese (Portugal),pt-PT,pt\n" +
-                "普通話 (香港),\"Chinese, Mandarin (Simplified Hong Kong)\",cmn-Hans-HK,zh\n" +
-                "普通话 (中国大陆),\"Chinese, Mandarin (Simplified China)\",cmn-Hans-CN,zh\n" +
-                "廣東話 (香港),\"Chinese, Cantonese (Traditional Hong Kong)\",yue-Hant-HK,zh-Hant\n" +
-                "國語 (台灣),\"Chinese, Mandarin (Traditional Taiwan)\",cmn-Hant-TW,zh-Hant";
-        String[] eachLine = allLang.split("\n");
-        supportLang = new Language[eachLine.length];
-        for (int i = 0; i < eachLine.length; i++) {
-            String[] column = eachLine[i].split(",");
-            supportLang[i] = new Language(column[0], column[1], column[2], column[3]);
-        }
+    /**
+     * A time after which the language catalogue is revalidated with the server
+     */
+    public static final long CATALOGUE_TTL = TimeUnit.HOURS.toMillis(24);
+
+    // wait this long before trying again a refresh that failed
+    private static final long RETRY_DELAY = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // the current catalogue with its index, it's replaced as a whole so a reader never see a
+    // catalogue with the index of another one
+    private static volatile LanguageIndex catalogue;
+    // true while a catalogue refresh is running, concurrent callers don't start another one
+    private static final AtomicBoolean refreshing = new AtomicBoolean();
+    // time at which the catalogue should be refreshed, 0 mean as soon as possible
+    private static volatile long refreshAt;
+
+    // built-in catalogue use until one is loaded, the class loader create it on first use
+    private static class Defaults {
+        static final LanguageIndex CATALOGUE = new LanguageIndex(new Language[]{
+                new Language("Deutsch (Deutschland)", "German (Germany)", "de-DE", "de"),
+                new Language("English (United States)", "English (United States)", "en-US", "en"),
+                new Language("English (Philippines)", "English (Philippines)", "en-PH", "en"),
+                new Language("English (Australia)", "English (Australia)", "en-AU", "en"),
+                new Language("English (Canada)", "English (Canada)", "en-CA", "en"),
+                new Language("English (Ghana)", "English (Ghana)", "en-GH", "en"),
+                new Language("English (Great Britain)", "English (United Kingdom)", "en-GB", "en"),
+                new Language("English (India)", "English (India)", "en-IN", "en"),
+                new Language("English (Ireland)", "English (Ireland)", "en-IE", "en"),
+                new Language("English (Kenya)", "English (Kenya)", "en-KE", "en"),
+                new Language("English (New Zealand)", "English (New Zealand)", "en-NZ", "en"),
+                new Language("English (Nigeria)", "English (Nigeria)", "en-NG", "en"),
+                new Language("English (South Africa)", "English (South Africa)", "en-ZA", "en"),
+                new Language("English (Tanzania)", "English (Tanzania)", "en-TZ", "en"),
+                new Language("Español (Argentina)", "Spanish (Argentina)", "es-AR", "es"),
+                new Language("Español (Bolivia)", "Spanish (Bolivia)", "es-BO", "es"),
+                new Language("Español (Chile)", "Spanish (Chile)", "es-CL", "es"),
+                new Language("Español (Colombia)", "Spanish (Colombia)", "es-CO", "es"),
+                new Language("Español (Costa Rica)", "Spanish (Costa Rica)", "es-CR", "es"),
+                new Language("Español (Ecuador)", "Spanish (Ecuador)", "es-EC", "es"),
+                new Language("Español (El Salvador)", "Spanish (El Salvador)", "es-SV", "es"),
+                new Language("Español (España)", "Spanish (Spain)", "es-ES", "es"),
+                new Language("Español (Estados Unidos)", "Spanish (United States)", "es-US", "es"),
+                new Language("Español (Guatemala)", "Spanish (Guatemala)", "es-GT", "es"),
+                new Language("Español (Honduras)", "Spanish (Honduras)", "es-HN", "es"),
+                new Language("Español (México)", "Spanish (Mexico)", "es-MX", "es"),
+                new Language("Español (Nicaragua)", "Spanish (Nicaragua)", "es-NI", "es"),
+                new Language("Español (Panamá)", "Spanish (Panama)", "es-PA", "es"),
+                new Language("Español (Paraguay)", "Spanish (Paraguay)", "es-PY", "es"),
+                new Language("Español (Perú)", "Spanish (Peru)", "es-PE", "es"),
+                new Language("Español (Puerto Rico)", "Spanish (Puerto Rico)", "es-PR", "es"),
+                new Language("Español (República Dominicana)", "Spanish (Dominican Republic)", "es-DO", "es"),
+                new Language("Español (Uruguay)", "Spanish (Uruguay)", "es-UY", "es"),
+                new Language("Español (Venezuela)", "Spanish (Venezuela)", "es-VE", "es"),
+                new Language("Français (France)", "French (France)", "fr-FR", "fr"),
+                new Language("Français (Canada)", "French (Canada)", "fr-CA", "fr"),
+                new Language("Italiano (Italia)", "Italian (Italy)", "it-IT", "it"),
+                new Language("日本語（日本）", "Japanese (Japan)", "ja-JP", "ja"),
+                new Language("한국어 (대한민국)", "Korean (South Korea)", "ko-KR", "ko"),
+                new Language("Português (Brasil)", "Portuguese (Brazil)", "pt-BR", "pt"),
+                new Language("Português (Portugal)", "Portuguese (Portugal)", "pt-PT", "pt"),
+                new Language("普通話 (香港)", "Chinese, Mandarin (Simplified Hong Kong)", "cmn-Hans-HK", "zh"),
+                new Language("普通话 (中国大陆)", "Chinese, Mandarin (Simplified China)", "cmn-Hans-CN", "zh"),
+                new Language("廣東話 (香港)", "Chinese, Cantonese (Traditional Hong Kong)", "yue-Hant-HK", "zh-Hant"),
+                new Language("國語 (台灣)", "Chinese, Mandarin (Traditional Taiwan)", "cmn-Hant-TW", "zh-Hant")
+        });
     }
 
     private Language(String displayLanguage, String langEn, String bcp47Code, String langCode) {
@@ -163,10 +185,7 @@ public class Language {
      */
     @Deprecated
     public static Language[] getAllSupportedLanguage() {
-        if (supportLang == null) {
-            initialDefaultLanguages();
-        }
-        return supportLang;
+        return currentCatalogue().getLanguages();
     }
 
     /**
@@ -180,51 +199,23 @@ public class Language {
      */
     @Deprecated
     public static Language getLanguage(String language) {
-        Language[] supportLang = getAllSupportedLanguage();
-        for (Language lang : supportLang) {
-            if (lang.bcp47Code.equalsIgnoreCase(language)) {
-                return lang;
-            } else if (lang.langCode.equalsIgnoreCase(language)) {
-                return lang;
-            }
-        }
-        return null;
+        return currentCatalogue().find(language);
     }
 
     /**
-     * get all language supported by natural voice
+     * get all language supported by natural voice. The languages stored on the device are return
+     * right away, when they are older than {@link #CATALOGUE_TTL} they are refreshed in background.
      *
      * @param context android context
      * @return array of language
      */
     public static Language[] getAllSupportedLanguage(Context context) {
-        if (supportLang == null) {
-            File file = new File(context.getFilesDir(), "aimmatic-speech-lang.json");
-            if (file.exists()) {
-                try {
-                    FileInputStream in = new FileInputStream(file);
-                    int size = in.available();
-                    byte[] buffer = new byte[size];
-                    in.read(buffer);
-                    in.close();
-                    supportLang = new Gson().fromJson(new String(buffer, "UTF-8"), Language[].class);
-                    if (supportLang != null) {
-                        return supportLang;
-                    }
-                    loadLanguage(new AndroidAppContext(context));
-                } catch (Exception e) {
-                    // ignore the error
-                }
-            } else {
-                loadLanguage(new AndroidAppContext(context));
-            }
-            initialDefaultLanguages();
-        }
-        return supportLang;
+        return loadCatalogue(context).getLanguages();
     }
 
     /**
-     * Get language from the give string lang
+     * Get language from the give string lang. If no language has the exact code, the closest
+     * language is return, for example "en-XX" give the first english language.
      *
      * @param language a string can be either language code (ISO 639-1) or BCP 47 Code
      * @param context  android context
@@ -233,52 +224,239 @@ public class Language {
      * @see <a href="https://en.wikipedia.org/wiki/ISO_639-1">ISO 639-1</a>
      */
     public static Language getLanguage(Context context, String language) {
-        Language[] supportLang = getAllSupportedLanguage(context);
-        for (Language lang : supportLang) {
-            if (lang.bcp47Code.equalsIgnoreCase(language)) {
-                return lang;
-            } else if (lang.langCode.equalsIgnoreCase(language)) {
-                return lang;
+        return loadCatalogue(context).find(language);
+    }
+
+    // the loaded catalogue or the built-in one
+    private static LanguageIndex currentCatalogue() {
+        LanguageIndex current = catalogue;
+        return current != null ? current : Defaults.CATALOGUE;
+    }
+
+    // the loaded catalogue, the first call read it from the device
+    private static LanguageIndex loadCatalogue(Context context) {
+        LanguageIndex current = catalogue;
+        if (current == null) {
+            synchronized (Language.class) {
+                current = catalogue;
+                if (current == null) {
+                    LanguageCache cache = new LanguageCache(context.getFilesDir());
+                    Language[] languages = null;
+                    try {
+                        Reader in = cache.open();
+                        if (in != null) {
+                            try {
+                                languages = readLanguages(new JsonReader(in));
+                            } finally {
+                                in.close();
+                            }
+                        }
+                    } catch (Exception e) {
+                        // ignore the error, the default languages are used until the refresh
+                    }
+                    if (languages != null) {
+                        refreshAt = cache.fetchedAt() + CATALOGUE_TTL;
+                        current = new LanguageIndex(languages);
+                    } else {
+                        current = Defaults.CATALOGUE;
+                    }
+                    catalogue = current;
+                }
             }
         }
+        // the stale catalogue is return right away, the refresh only affect later calls
+        if (System.currentTimeMillis() >= refreshAt) {
+            loadLanguage(new AndroidAppContext(context));
+        }
+        return current;
+    }
+
+    /**
+     * Read a list of language from either a language response or a plain array of language
+     *
+     * @param reader a json reader
+     * @return an array of language or null if the json has none
+     * @throws IOException if the json can't be read
+     */
+    static Language[] readLanguages(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_ARRAY) {
+            return readLanguageArray(reader);
+        } else if (token == JsonToken.BEGIN_OBJECT) {
+            Language[] languages = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("lang".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    languages = readLanguageArray(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return languages;
+        }
+        reader.skipValue();
         return null;
     }
 
+    private static Language[] readLanguageArray(JsonReader reader) throws IOException {
+        TypeAdapter<Language> adapter = new Adapter().nullSafe();
+        List<Language> languages = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Language lang = adapter.read(reader);
+            if (lang != null) {
+                languages.add(lang);
+            }
+        }
+        reader.endArray();
+        return languages.toArray(new Language[languages.size()]);
+    }
+
     static void loadLanguage(final AppContext appContext) {
-        loadLanguage(appContext, null);
+        refreshLanguage(appContext, null);
     }
 
     @VisibleForTesting
     static void loadLanguage(final AppContext appContext, final Callback callback) {
+        refreshLanguage(appContext, callback);
+    }
+
+    // fetch the catalogue with a conditional request, a 304 only extend the life of the stored one.
+    // Only one refresh run at a time since they write the same cache file, other callers keep using
+    // the current catalogue and a callback is told the refresh failed
+    private static void refreshLanguage(final AppContext appContext, final Callback callback) {
         OkHttpClient client = appContext.getOkHttpClient();
-        final Request request = new Request.Builder()
-                .url(appContext.getHost() + Resources.ApiVersion + Resources.NaturalVoiceLanguage)
-                .build();
-        final File dir = appContext.getDataDir();
-        client.newCall(request).enqueue(new Callback() {
+        final LanguageCache cache = new LanguageCache(appContext.getDataDir());
+        Request.Builder builder = new Request.Builder()
+                .url(appContext.getHost() + Resources.ApiVersion + Resources.NaturalVoiceLanguage);
+        cache.addValidators(builder);
+        Call call = client.newCall(builder.build());
+        if (!refreshing.compareAndSet(false, true)) {
+            if (callback != null) callback.onFailure(call, new IOException("language refresh already running"));
+            return;
+        }
+        call.enqueue(new Callback() {
             @Override
             public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                finish(false);
                 if (callback != null) callback.onFailure(call, e);
             }
 
             @Override
-            public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
-                if (response.code() == 200 && response.body() != null) {
-                    ResponseBody responseBody = response.body();
-                    BufferedSource source = responseBody.source();
-                    source.request(Long.MAX_VALUE); // request the entire body.
-                    Buffer buffer = source.buffer();
-                    String resp = buffer.clone().readString(Charset.forName("UTF-8"));
-                    LangResponse lr = new Gson().fromJson(resp, LangResponse.class);
-                    File file = new File(dir, "aimmatic-speech-lang.json");
-                    FileOutputStream out = new FileOutputStream(file);
-                    String data = new Gson().toJson(lr.getLanguages());
-                    out.write(data.getBytes());
-                    out.close();
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                boolean refreshed = false;
+                IOException error = null;
+                Response replay = response;
+                try {
+                    if (response.code() == 200 && response.body() != null) {
+                        ResponseBody responseBody = response.body();
+                        try {
+                            InputStream source;
+                            if (callback != null) {
+                                // the caller read the body again, the small catalogue is kept in memory
+                                byte[] bytes = responseBody.bytes();
+                                replay = response.newBuilder()
+                                        .body(ResponseBody.create(responseBody.contentType(), bytes)).build();
+                                source = new ByteArrayInputStream(bytes);
+                            } else {
+                                source = responseBody.byteStream();
+                            }
+                            // parse the response as it arrive while the raw bytes are saved
+                            InputStream in = cache.tee(source);
+                            Language[] languages = readLanguages(new JsonReader(new InputStreamReader(in, UTF8)));
+                            if (languages != null) {
+                                cache.commit(response.header("ETag"), response.header("Last-Modified"));
+                                catalogue = new LanguageIndex(languages);
+                                refreshed = true;
+                            }
+                        } catch (JsonParseException | IllegalStateException e) {
+                            error = new IOException("invalid language response", e);
+                        } catch (IOException e) {
+                            error = e;
+                        } finally {
+                            cache.abort();
+                            responseBody.close();
+                        }
+                    } else if (response.code() == 304) {
+                        try {
+                            cache.touch();
+                            refreshed = true;
+                        } catch (IOException e) {
+                            error = e;
+                        }
+                    }
+                } finally {
+                    finish(refreshed);
+                    // without a caller nobody else will release the connection
+                    if (callback == null && response.body() != null) {
+                        response.close();
+                    }
+                }
+                if (callback == null) {
+                    return;
+                }
+                // an exception thrown here is only logged by okhttp, the caller must always be answered
+                if (error != null) {
+                    callback.onFailure(call, error);
+                } else {
+                    try {
+                        callback.onResponse(call, replay);
+                    } catch (IOException e) {
+                        callback.onFailure(call, e);
+                    }
                 }
-                if (callback != null) callback.onResponse(call, response);
+            }
+
+            private void finish(boolean refreshed) {
+                refreshAt = System.currentTimeMillis() + (refreshed ? CATALOGUE_TTL : RETRY_DELAY);
+                refreshing.set(false);
             }
         });
     }
 
+    // read a language without reflection
+    static class Adapter extends TypeAdapter<Language> {
+
+        @Override
+        public void write(JsonWriter out, Language value) throws IOException {
+            out.beginObject();
+            out.name("name").value(value.displayLanguage);
+            out.name("fullname").value(value.langEn);
+            out.name("speechlang").value(value.bcp47Code);
+            out.name("nlplang").value(value.langCode);
+            out.endObject();
+        }
+
+        @Override
+        public Language read(JsonReader in) throws IOException {
+            String displayLanguage = null;
+            String langEn = null;
+            String bcp47Code = null;
+            String langCode = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "name":
+                        displayLanguage = Json.nextString(in);
+                        break;
+                    case "fullname":
+                        langEn = Json.nextString(in);
+                        break;
+                    case "speechlang":
+                        bcp47Code = Json.nextString(in);
+                        break;
+                    case "nlplang":
+                        langCode = Json.nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Language(displayLanguage, langEn, bcp47Code, langCode);
+        }
+
+    }
+
 }
@@ -0,0 +1,273 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.aimmatic.natural.voice.rest;
+
+import android.support.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Properties;
+
+import okhttp3.Request;
+
+/**
+ * A language catalogue stored in a directory. Beside the catalogue, a small meta file keep the time
+ * it was fetched with its ETag and Last-Modified header so it can be revalidated with a conditional
+ * request. Both files are written to a temporary file first then renamed, a reader never see a
+ * partially written catalogue. A new catalogue is stored as it's downloaded with {@link #tee} so the
+ * response is parsed and saved in one pass.
+ */
+class LanguageCache {
+
+    static final String CATALOGUE = "aimmatic-speech-lang.json";
+    static final String META = "aimmatic-speech-lang.meta";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String FETCHED_AT = "fetchedAt";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+
+    private final File catalogue;
+    private final File meta;
+    // the response being copied into a new catalogue, null if there is none
+    private InputStream pendingSource;
+    private FileOutputStream pendingFile;
+    private OutputStream pendingCopy;
+
+    LanguageCache(File dir) {
+        this.catalogue = new File(dir, CATALOGUE);
+        this.meta = new File(dir, META);
+    }
+
+    /**
+     * Open the catalogue
+     *
+     * @return a reader of the catalogue json or null if there is none
+     * @throws IOException if the catalogue can't be opened
+     */
+    Reader open() throws IOException {
+        if (!catalogue.exists()) {
+            return null;
+        }
+        return new InputStreamReader(new BufferedInputStream(new FileInputStream(catalogue)), UTF8);
+    }
+
+    /**
+     * Copy everything read from a response into a new catalogue. The new catalogue replace the
+     * current one only when {@link #commit} is called.
+     *
+     * @param source a response body
+     * @return a stream to read the response from
+     * @throws IOException if the new catalogue can't be created
+     */
+    InputStream tee(InputStream source) throws IOException {
+        abort();
+        pendingSource = source;
+        pendingFile = new FileOutputStream(tmpFile(catalogue));
+        pendingCopy = new BufferedOutputStream(pendingFile);
+        return new FilterInputStream(source) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    pendingCopy.write(b);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(@NonNull byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    pendingCopy.write(b, off, read);
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                // skipped bytes must still be copied
+                byte[] buffer = new byte[(int) Math.min(n, 8192)];
+                int read = read(buffer, 0, buffer.length);
+                return Math.max(read, 0);
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Copy the rest of the response then replace the catalogue with it
+     *
+     * @param etag         an ETag header of the response, can be null
+     * @param lastModified a Last-Modified header of the response, can be null
+     * @throws IOException if the catalogue can't be written
+     */
+    void commit(String etag, String lastModified) throws IOException {
+        if (pendingCopy == null) {
+            throw new IllegalStateException("no catalogue to commit");
+        }
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = pendingSource.read(buffer)) != -1) {
+                pendingCopy.write(buffer, 0, read);
+            }
+            pendingCopy.flush();
+            pendingFile.getFD().sync();
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+        OutputStream out = pendingCopy;
+        pendingSource = null;
+        pendingFile = null;
+        pendingCopy = null;
+        out.close();
+        File tmp = tmpFile(catalogue);
+        if (!tmp.renameTo(catalogue)) {
+            tmp.delete();
+            throw new IOException("unable to replace " + catalogue);
+        }
+        writeMeta(System.currentTimeMillis(), etag, lastModified);
+    }
+
+    /**
+     * Drop the catalogue being copied, the current one is kept
+     */
+    void abort() {
+        if (pendingCopy != null) {
+            try {
+                pendingCopy.close();
+            } catch (IOException e) {
+                // the file is deleted anyway
+            }
+            pendingSource = null;
+            pendingFile = null;
+            pendingCopy = null;
+            tmpFile(catalogue).delete();
+        }
+    }
+
+    /**
+     * Mark the catalogue as fresh, the server has answer it's not modified
+     *
+     * @throws IOException if the meta file can't be written
+     */
+    void touch() throws IOException {
+        Properties properties = readMeta();
+        writeMeta(System.currentTimeMillis(), properties.getProperty(ETAG), properties.getProperty(LAST_MODIFIED));
+    }
+
+    /**
+     * Get the time the catalogue was fetched
+     *
+     * @return a time in milliseconds or 0 if there is no catalogue
+     */
+    long fetchedAt() {
+        if (!catalogue.exists()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(readMeta().getProperty(FETCHED_AT, "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Add the validators of the stored catalogue to a request so the server can answer 304
+     *
+     * @param builder a request of the catalogue
+     */
+    void addValidators(Request.Builder builder) {
+        if (!catalogue.exists()) {
+            return;
+        }
+        Properties properties = readMeta();
+        String etag = properties.getProperty(ETAG);
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+        String lastModified = properties.getProperty(LAST_MODIFIED);
+        if (lastModified != null) {
+            builder.header("If-Modified-Since", lastModified);
+        }
+    }
+
+    private Properties readMeta() {
+        Properties properties = new Properties();
+        if (meta.exists()) {
+            try {
+                InputStream in = new FileInputStream(meta);
+                try {
+                    properties.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                // an unreadable meta only mean the catalogue is revalidated sooner
+            }
+        }
+        return properties;
+    }
+
+    private void writeMeta(long fetchedAt, String etag, String lastModified) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(FETCHED_AT, String.valueOf(fetchedAt));
+        if (etag != null) {
+            properties.setProperty(ETAG, etag);
+        }
+        if (lastModified != null) {
+            properties.setProperty(LAST_MODIFIED, lastModified);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        properties.store(out, null);
+        writeAtomically(meta, out.toByteArray());
+    }
+
+    private static File tmpFile(File file) {
+        return new File(file.getPath() + ".tmp");
+    }
+
+    private static void writeAtomically(File file, byte[] data) throws IOException {
+        File tmp = tmpFile(file);
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(data);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("unable to replace " + file);
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.rest;
+
+/**
+ * An immutable index of languages by BCP-47 code and language code. It's built once when the list of
+ * language is loaded and a lookup doesn't allocate. The key is compare without case and '_' is the
+ * same as '-' so "en_us" find "en-US". When no language match the whole code, the last subtag is
+ * removed until one match, so "en-XX" find the first english language of the list.
+ */
+final class LanguageIndex {
+
+    private final Language[] languages;
+    // open addressing table, its length is a power of two and keep at least half empty
+    private final String[] keys;
+    private final Language[] values;
+    private final int mask;
+
+    LanguageIndex(Language[] languages) {
+        this.languages = languages;
+        int capacity = 16;
+        // each language add at most its code, language code and the prefixes of its code
+        int max = 0;
+        for (Language lang : languages) {
+            if (lang != null) {
+                max += 2 + subtagCount(lang.getBcp47Code());
+            }
+        }
+        while (capacity < max * 2) {
+            capacity <<= 1;
+        }
+        keys = new String[capacity];
+        values = new Language[capacity];
+        mask = capacity - 1;
+        // the first language wins, an exact code before a language code before a prefix
+        for (Language lang : languages) {
+            if (lang != null) {
+                put(lang.getBcp47Code(), lang);
+            }
+        }
+        for (Language lang : languages) {
+            if (lang != null) {
+                put(lang.getLangCode(), lang);
+            }
+        }
+        for (Language lang : languages) {
+            if (lang != null && lang.getBcp47Code() != null) {
+                String code = lang.getBcp47Code();
+                for (int end = lastSeparator(code, code.length()); end > 0; end = lastSeparator(code, end)) {
+                    put(code.substring(0, end), lang);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the indexed languages
+     *
+     * @return array of language in the order they were given
+     */
+    Language[] getLanguages() {
+        return languages;
+    }
+
+    /**
+     * Find a language by its BCP-47 code or language code, or the closest language when none match
+     *
+     * @param code a BCP-47 code or a language code
+     * @return a language or null if nothing match
+     */
+    Language find(String code) {
+        if (code == null) {
+            return null;
+        }
+        for (int end = code.length(); end > 0; end = lastSeparator(code, end)) {
+            Language lang = get(code, end);
+            if (lang != null) {
+                return lang;
+            }
+        }
+        return null;
+    }
+
+    private void put(String key, Language lang) {
+        if (key == null || key.isEmpty()) {
+            return;
+        }
+        int i = hash(key, key.length()) & mask;
+        while (keys[i] != null) {
+            if (matches(keys[i], key, key.length())) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = lang;
+    }
+
+    // look up the first end characters of code
+    private Language get(String code, int end) {
+        int i = hash(code, end) & mask;
+        while (keys[i] != null) {
+            if (matches(keys[i], code, end)) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    private static int hash(String s, int end) {
+        int h = 0;
+        for (int i = 0; i < end; i++) {
+            h = 31 * h + fold(s.charAt(i));
+        }
+        // spread the high bits as the table use only the low bits
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String key, String code, int end) {
+        if (key.length() != end) {
+            return false;
+        }
+        for (int i = 0; i < end; i++) {
+            if (fold(key.charAt(i)) != fold(code.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char fold(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        return c == '_' ? '-' : c;
+    }
+
+    // index of the last separator before end, or -1 if there is none
+    private static int lastSeparator(String s, int end) {
+        for (int i = end - 1; i > 0; i--) {
+            char c = s.charAt(i);
+            if (c == '-' || c == '_') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int subtagCount(String code) {
+        int count = 0;
+        if (code != null) {
+            for (int end = lastSeparator(code, code.length()); end > 0; end = lastSeparator(code, end)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
@@ -23,6 +23,7 @@ public interface Resources {
 
     String ApiVersion = "/v1";
     String NaturalVoice = "/insights/UploadAudio";
+    String NaturalVoiceSession = "/insights/UploadAudio/sessions";
     String NaturalVoiceLanguage = "/insights/langs";
 
     MediaType MEDIA_TYPE_WAVE = MediaType.parse("audio/wav");
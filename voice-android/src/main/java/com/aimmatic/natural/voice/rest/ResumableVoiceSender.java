@@ -0,0 +1,247 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.rest;
+
+import com.aimmatic.natural.core.rest.AppContext;
+import com.aimmatic.natural.core.rest.Json;
+import com.aimmatic.natural.voice.rest.response.UploadSessionResponse;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import okhttp3.FormBody;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.ByteString;
+
+/**
+ * This class represent a rest client which send an audio to Placenext Api in fixed-size chunks.
+ * An upload session is created first, then each chunk is sent with its offset and its SHA-256
+ * checksum. After a failure the upload is resumed with {@link #resume(String, File)}, the client ask
+ * the server which chunks it already has and only send the missing ones. The audio is recognized
+ * once the session is completed. It's useful for long recordings on a slow or lossy network, a
+ * short audio should be sent with {@link VoiceSender}.
+ * <p>
+ * All methods execute synchronously so don't use them on main thread or UI Thread.
+ */
+
+public class ResumableVoiceSender {
+
+    /**
+     * Default chunk size in byte
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Header carrying the offset in byte of a chunk in the audio
+     */
+    public static final String HEADER_CHUNK_OFFSET = "X-Chunk-Offset";
+
+    /**
+     * Header carrying the hex SHA-256 checksum of a chunk
+     */
+    public static final String HEADER_CHUNK_CHECKSUM = "X-Chunk-Sha256";
+
+    // status return by the server when the checksum of a chunk doesn't match
+    private static final int CHECKSUM_MISMATCH = 422;
+    // number of time a corrupted chunk is sent before giving up
+    private static final int CHUNK_ATTEMPTS = 2;
+    private static final MediaType MEDIA_TYPE_CHUNK = MediaType.parse("application/octet-stream");
+
+    private final AppContext appContext;
+    private final int chunkSize;
+
+    /**
+     * Create a resumable sender with default chunk size
+     *
+     * @param appContext a app context which provide a way to get the ApiKey
+     */
+    public ResumableVoiceSender(AppContext appContext) {
+        this(appContext, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create a resumable sender
+     *
+     * @param appContext a app context which provide a way to get the ApiKey
+     * @param chunkSize  a size of chunk in byte, a session must always be resumed with the same size
+     */
+    public ResumableVoiceSender(AppContext appContext, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+        this.appContext = appContext;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Get the chunk size
+     *
+     * @return size of chunk in byte
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Send a voice to Placenext Api in a new upload session
+     *
+     * @param file       an audio file
+     * @param mediaType  a content type of the audio
+     * @param deviceLang a default language of the device
+     * @param lat        a latitude of the device, this value is optional
+     * @param lng        a longitude of the device, this value is optional
+     * @param sampleRate a sample rate of the audio
+     * @return Response from Placenext Api
+     * @throws IOException if the upload failed, it can be resumed if the session was created
+     */
+    public Response sentVoice(File file, MediaType mediaType, String deviceLang, double lat, double lng, int sampleRate) throws IOException {
+        return resume(createSession(file, mediaType, deviceLang, lat, lng, sampleRate), file);
+    }
+
+    /**
+     * Create an upload session for an audio file. Nothing is sent until the session is resumed.
+     *
+     * @param file       an audio file
+     * @param mediaType  a content type of the audio
+     * @param deviceLang a default language of the device
+     * @param lat        a latitude of the device, this value is optional
+     * @param lng        a longitude of the device, this value is optional
+     * @param sampleRate a sample rate of the audio
+     * @return a session id
+     * @throws IOException if the session can't be created, {@link UploadException} if the server reject it
+     */
+    public String createSession(File file, MediaType mediaType, String deviceLang, double lat, double lng, int sampleRate) throws IOException {
+        FormBody.Builder builder = new FormBody.Builder()
+                .add("filename", file.getName())
+                .add("contentType", mediaType.toString())
+                .add("size", "" + file.length())
+                .add("chunkSize", "" + chunkSize)
+                .add("deviceLanguage", deviceLang)
+                .add("sampleRate", "" + sampleRate);
+        // don't add it lat,lng 0
+        if (lat != 0 && lng != 0) {
+            builder = builder.add("deviceLocation", lat + "," + lng);
+        }
+        Request request = new Request.Builder()
+                .url(sessionUrl(null))
+                .post(builder.build())
+                .build();
+        UploadSessionResponse.UploadSession session = readSession(execute(request));
+        if (session == null || session.getId() == null) {
+            throw new IOException("server didn't return upload session");
+        }
+        return session.getId();
+    }
+
+    /**
+     * Send the chunks the server doesn't have yet then complete the session. If it failed again,
+     * it can be resumed later with the same session id.
+     *
+     * @param sessionId a session id return by {@link #createSession}
+     * @param file      the audio file of the session
+     * @return Response from Placenext Api
+     * @throws IOException if a chunk can't be sent, {@link UploadException} with code 404 if the
+     *                     server no longer know the session
+     */
+    public Response resume(String sessionId, File file) throws IOException {
+        Request status = new Request.Builder()
+                .url(sessionUrl(sessionId))
+                .get()
+                .build();
+        UploadSessionResponse.UploadSession session = readSession(execute(status));
+        long length = file.length();
+        boolean[] received = new boolean[(int) ((length + chunkSize - 1) / chunkSize)];
+        if (session != null) {
+            for (int index : session.getChunks()) {
+                if (index >= 0 && index < received.length) {
+                    received[index] = true;
+                }
+            }
+        }
+        RandomAccessFile audio = new RandomAccessFile(file, "r");
+        try {
+            byte[] chunk = new byte[(int) Math.min(chunkSize, length)];
+            for (int i = 0; i < received.length; i++) {
+                if (!received[i]) {
+                    sendChunk(sessionId, audio, length, i, chunk);
+                }
+            }
+        } finally {
+            audio.close();
+        }
+        Request complete = new Request.Builder()
+                .url(sessionUrl(sessionId) + "/complete")
+                .post(RequestBody.create(null, new byte[0]))
+                .build();
+        return execute(complete);
+    }
+
+    private void sendChunk(String sessionId, RandomAccessFile audio, long length, int index, byte[] chunk) throws IOException {
+        long offset = (long) index * chunkSize;
+        int size = (int) Math.min(chunkSize, length - offset);
+        audio.seek(offset);
+        audio.readFully(chunk, 0, size);
+        Request request = new Request.Builder()
+                .url(sessionUrl(sessionId) + "/chunks/" + index)
+                .header(HEADER_CHUNK_OFFSET, "" + offset)
+                .header(HEADER_CHUNK_CHECKSUM, ByteString.of(chunk, 0, size).sha256().hex())
+                .put(RequestBody.create(MEDIA_TYPE_CHUNK, chunk, 0, size))
+                .build();
+        for (int attempt = 1; ; attempt++) {
+            Response response = execute(request);
+            int code = response.code();
+            response.close();
+            if (code < 400) {
+                return;
+            }
+            // the chunk was corrupted on the way, send it again right away
+            if (code != CHECKSUM_MISMATCH || attempt >= CHUNK_ATTEMPTS) {
+                throw new UploadException(code, "unable to send chunk " + index);
+            }
+        }
+    }
+
+    private String sessionUrl(String sessionId) {
+        String url = appContext.getHost() + Resources.ApiVersion + Resources.NaturalVoiceSession;
+        return sessionId == null ? url : url + "/" + sessionId;
+    }
+
+    private Response execute(Request request) throws IOException {
+        return appContext.getOkHttpClient().newCall(request).execute();
+    }
+
+    // decode a session response, throw if the server return an error
+    private static UploadSessionResponse.UploadSession readSession(Response response) throws IOException {
+        try {
+            if (response.code() >= 400) {
+                throw new UploadException(response.code(), "upload session request failed");
+            }
+            if (response.body() == null) {
+                return null;
+            }
+            UploadSessionResponse sessionResponse = Json.fromJson(response.body(), UploadSessionResponse.class);
+            return sessionResponse != null ? sessionResponse.getSession() : null;
+        } catch (JsonParseException e) {
+            throw new IOException("unable to decode upload session", e);
+        } finally {
+            response.close();
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.rest;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Pipe;
+import okio.Sink;
+
+/**
+ * A request body which data is written while the request is being sent. The encoder thread write
+ * the encoded audio with {@link #write(byte[], int)} and the http client send it with a chunked
+ * transfer encoding as soon as it's available. The data is buffered in memory up to a fixed size,
+ * if the network can't keep up the writer wait for a limited time then the write failed. The body
+ * can only be sent once.
+ */
+public class StreamingAudioBody extends RequestBody {
+
+    /**
+     * Default maximum size of data buffered in memory waiting to be sent
+     */
+    public static final long DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Default maximum time in millisecond the writer wait when the buffer is full
+     */
+    public static final long DEFAULT_WRITE_TIMEOUT = 2000;
+
+    private final MediaType mediaType;
+    private final Pipe pipe;
+    private final Sink sink;
+    // reusable buffer to move the data into the pipe, only use by the writer thread
+    private final Buffer buffer = new Buffer();
+    private boolean sent;
+
+    /**
+     * Create a streaming body with default buffer size and write timeout
+     *
+     * @param mediaType a content type of the audio
+     */
+    public StreamingAudioBody(MediaType mediaType) {
+        this(mediaType, DEFAULT_BUFFER_SIZE, DEFAULT_WRITE_TIMEOUT);
+    }
+
+    /**
+     * Create a streaming body
+     *
+     * @param mediaType    a content type of the audio
+     * @param bufferSize   a maximum size of data in byte buffered in memory
+     * @param writeTimeout a maximum time in millisecond the writer wait when the buffer is full
+     */
+    public StreamingAudioBody(MediaType mediaType, long bufferSize, long writeTimeout) {
+        this.mediaType = mediaType;
+        this.pipe = new Pipe(bufferSize);
+        this.sink = pipe.sink();
+        this.sink.timeout().timeout(writeTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Append data to the body. The data is copied so the array can be reused after this method return.
+     *
+     * @param data a data to be sent
+     * @param size size of data in byte
+     * @throws IOException if the body has been aborted or the buffer stay full longer than the write timeout
+     */
+    public void write(byte[] data, int size) throws IOException {
+        buffer.write(data, 0, size);
+        try {
+            sink.write(buffer, size);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Mark the end of the body. The request complete once all data has been sent.
+     *
+     * @throws IOException if the body has been aborted before all data was sent
+     */
+    public void close() throws IOException {
+        sink.close();
+    }
+
+    /**
+     * Discard the body, the pending and the next write will failed.
+     */
+    public void abort() {
+        try {
+            pipe.source().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MediaType contentType() {
+        return mediaType;
+    }
+
+    /**
+     * The length is unknown until the recording end
+     *
+     * @return -1
+     */
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        synchronized (this) {
+            // the data is consumed by the first attempt, a retry can't send it again
+            if (sent) {
+                throw new IOException("streaming body can only be sent once");
+            }
+            sent = true;
+        }
+        sink.writeAll(pipe.source());
+    }
+
+}
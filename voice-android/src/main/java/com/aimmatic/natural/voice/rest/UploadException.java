@@ -0,0 +1,46 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.rest;
+
+import java.io.IOException;
+
+/**
+ * This exception is thrown when the server reject a step of an upload with an error status.
+ */
+
+public class UploadException extends IOException {
+
+    private final int code;
+
+    /**
+     * Create an upload exception
+     *
+     * @param code    http status code return by the server
+     * @param message a detail message
+     */
+    public UploadException(int code, String message) {
+        super(message + " (" + code + ")");
+        this.code = code;
+    }
+
+    /**
+     * Get http status code return by the server
+     *
+     * @return http status code
+     */
+    public int getCode() {
+        return code;
+    }
+
+}
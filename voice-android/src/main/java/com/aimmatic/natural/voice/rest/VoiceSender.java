@@ -18,6 +18,7 @@ import com.aimmatic.natural.core.rest.AppContext;
 import java.io.File;
 import java.io.IOException;
 
+import okhttp3.Call;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
@@ -55,9 +56,42 @@ public class VoiceSender {
      * @throws IOException
      */
     public Response sentVoice(File file, MediaType mediaType, String deviceLang, double lat, double lng, int sampleRate) throws IOException {
+        return newVoiceCall(RequestBody.create(mediaType, file), file.getName(), deviceLang, lat, lng, sampleRate).execute();
+    }
+
+    /**
+     * Prepare a call to send a voice to Placenext Api without executing it. The audio can be a
+     * {@link StreamingAudioBody} so the upload can start while the audio is still being recorded,
+     * in that case the call should be enqueue with {@link Call#enqueue(okhttp3.Callback)}.
+     *
+     * @param audio      an audio request body, its content type is the audio format
+     * @param filename   a name of audio file
+     * @param deviceLang a default language of the device
+     * @param lat        a latitude of the device, this value is optional
+     * @param lng        a longitude of the device, this value is optional
+     * @param sampleRate a sample rate of the audio
+     * @return a call ready to be executed
+     */
+    public Call newVoiceCall(RequestBody audio, String filename, String deviceLang, double lat, double lng, int sampleRate) {
         OkHttpClient client = appContext.getOkHttpClient();
+        return client.newCall(newVoiceRequest(audio, filename, deviceLang, lat, lng, sampleRate));
+    }
+
+    /**
+     * Prepare a request to send a voice to Placenext Api, the request can be executed with another
+     * client than the one of the app context, e.g. a client which limit the number of connection.
+     *
+     * @param audio      an audio request body, its content type is the audio format
+     * @param filename   a name of audio file
+     * @param deviceLang a default language of the device
+     * @param lat        a latitude of the device, this value is optional
+     * @param lng        a longitude of the device, this value is optional
+     * @param sampleRate a sample rate of the audio
+     * @return a request ready to be executed
+     */
+    public Request newVoiceRequest(RequestBody audio, String filename, String deviceLang, double lat, double lng, int sampleRate) {
         MultipartBody.Builder buidler = new MultipartBody.Builder().setType(MultipartBody.FORM)
-                .addFormDataPart("uploadFile", file.getName(), RequestBody.create(mediaType, file))
+                .addFormDataPart("uploadFile", filename, audio)
                 .addFormDataPart("deviceLanguage", deviceLang)
                 .addFormDataPart("sampleRate", "" + sampleRate);
         // don't add it lat,lng 0
@@ -66,13 +100,10 @@ public class VoiceSender {
         }
         RequestBody requestBody = buidler.build();
 
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .url(appContext.getHost() + Resources.ApiVersion + Resources.NaturalVoice)
                 .post(requestBody)
                 .build();
-        Response response = client.newCall(request).execute();
-        return response;
     }
 
-
 }
@@ -14,11 +14,21 @@ limitations under the License.
 package com.aimmatic.natural.voice.rest.response;
 
 import com.aimmatic.natural.voice.rest.Language;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 
 /**
  * Language Response
  */
+@JsonAdapter(LangResponse.AdapterFactory.class)
 public class LangResponse {
 
     @SerializedName("lang")
@@ -32,4 +42,43 @@ public class LangResponse {
     public Language[] getLanguages() {
         return languages;
     }
+
+    // read a language response without reflection, the languages are read by the adapter of Language
+    static class AdapterFactory implements TypeAdapterFactory {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (type.getRawType() != LangResponse.class) {
+                return null;
+            }
+            final TypeAdapter<Language[]> languagesAdapter = gson.getAdapter(Language[].class);
+            return (TypeAdapter<T>) new TypeAdapter<LangResponse>() {
+                @Override
+                public void write(JsonWriter out, LangResponse value) throws IOException {
+                    out.beginObject();
+                    out.name("lang");
+                    languagesAdapter.write(out, value.languages);
+                    out.endObject();
+                }
+
+                @Override
+                public LangResponse read(JsonReader in) throws IOException {
+                    LangResponse response = new LangResponse();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        if ("lang".equals(in.nextName())) {
+                            response.languages = languagesAdapter.read(in);
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return response;
+                }
+            };
+        }
+
+    }
+
 }
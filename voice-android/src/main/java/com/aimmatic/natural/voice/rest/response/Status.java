@@ -13,12 +13,20 @@ limitations under the License.
 
 package com.aimmatic.natural.voice.rest.response;
 
+import com.aimmatic.natural.core.rest.Json;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 
 /**
  * A request status, response from the server
  */
 
+@JsonAdapter(Status.Adapter.class)
 public class Status {
 
     @SerializedName("code")
@@ -69,4 +77,42 @@ public class Status {
     public String getRequestId() {
         return requestId;
     }
+
+    // read a status without reflection
+    static class Adapter extends TypeAdapter<Status> {
+
+        @Override
+        public void write(JsonWriter out, Status value) throws IOException {
+            out.beginObject();
+            out.name("code").value(value.code);
+            out.name("message").value(value.message);
+            out.name("requestId").value(value.requestId);
+            out.endObject();
+        }
+
+        @Override
+        public Status read(JsonReader in) throws IOException {
+            Status status = new Status(0, null, null);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "code":
+                        status.code = Json.nextInt(in);
+                        break;
+                    case "message":
+                        status.message = Json.nextString(in);
+                        break;
+                    case "requestId":
+                        status.requestId = Json.nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return status;
+        }
+
+    }
+
 }
@@ -0,0 +1,174 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.rest.response;
+
+import com.aimmatic.natural.core.rest.Json;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Upload session response contain the state of a resumable upload
+ */
+
+@JsonAdapter(UploadSessionResponse.Adapter.class)
+public class UploadSessionResponse extends BaseResponse {
+
+    @SerializedName("data")
+    private UploadSession session;
+
+    /**
+     * Create upload session response object
+     *
+     * @param status request status
+     */
+    public UploadSessionResponse(Status status) {
+        super(status);
+    }
+
+    /**
+     * Get the upload session
+     *
+     * @return an upload session or null if the server didn't return it
+     */
+    public UploadSession getSession() {
+        return session;
+    }
+
+    /**
+     * A resumable upload session
+     */
+    public static class UploadSession {
+
+        @SerializedName("id")
+        private String id;
+
+        @SerializedName("chunks")
+        private int[] chunks;
+
+        /**
+         * Get the session id
+         *
+         * @return a session id
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Get index of chunks the server already received and verified
+         *
+         * @return list of chunk index, never null
+         */
+        public int[] getChunks() {
+            return chunks != null ? chunks : new int[0];
+        }
+    }
+
+    // read an upload session response without reflection
+    static class Adapter extends TypeAdapter<UploadSessionResponse> {
+
+        private final TypeAdapter<Status> statusAdapter = new Status.Adapter().nullSafe();
+
+        @Override
+        public void write(JsonWriter out, UploadSessionResponse value) throws IOException {
+            out.beginObject();
+            out.name("status");
+            statusAdapter.write(out, value.getStatus());
+            if (value.session != null) {
+                out.name("data").beginObject();
+                out.name("id").value(value.session.id);
+                out.name("chunks").beginArray();
+                for (int chunk : value.session.getChunks()) {
+                    out.value(chunk);
+                }
+                out.endArray();
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public UploadSessionResponse read(JsonReader in) throws IOException {
+            Status status = null;
+            UploadSession session = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "status":
+                        status = statusAdapter.read(in);
+                        break;
+                    case "data":
+                        session = readSession(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            UploadSessionResponse response = new UploadSessionResponse(status);
+            response.session = session;
+            return response;
+        }
+
+        private static UploadSession readSession(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            UploadSession session = new UploadSession();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        session.id = Json.nextString(in);
+                        break;
+                    case "chunks":
+                        session.chunks = readChunks(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return session;
+        }
+
+        private static int[] readChunks(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            int[] chunks = new int[8];
+            int size = 0;
+            in.beginArray();
+            while (in.hasNext()) {
+                if (size == chunks.length) {
+                    chunks = Arrays.copyOf(chunks, size * 2);
+                }
+                chunks[size++] = in.nextInt();
+            }
+            in.endArray();
+            return Arrays.copyOf(chunks, size);
+        }
+
+    }
+
+}
@@ -13,12 +13,20 @@ limitations under the License.
 
 package com.aimmatic.natural.voice.rest.response;
 
+import com.aimmatic.natural.core.rest.Json;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 
 /**
  * Create voice response object
  */
 
+@JsonAdapter(VoiceResponse.Adapter.class)
 public class VoiceResponse extends BaseResponse {
 
     @SerializedName("data")
@@ -52,4 +60,48 @@ public class VoiceResponse extends BaseResponse {
     public VoiceResult getVoiceResult() {
         return voiceResult;
     }
+
+    // read a voice response without reflection
+    static class Adapter extends TypeAdapter<VoiceResponse> {
+
+        private final TypeAdapter<Status> statusAdapter = new Status.Adapter().nullSafe();
+        private final TypeAdapter<VoiceResult> resultAdapter = new VoiceResult.Adapter().nullSafe();
+
+        @Override
+        public void write(JsonWriter out, VoiceResponse value) throws IOException {
+            out.beginObject();
+            out.name("status");
+            statusAdapter.write(out, value.getStatus());
+            out.name("data");
+            resultAdapter.write(out, value.voiceResult);
+            out.endObject();
+        }
+
+        @Override
+        public VoiceResponse read(JsonReader in) throws IOException {
+            Status status = null;
+            VoiceResult result = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "status":
+                        status = statusAdapter.read(in);
+                        break;
+                    case "data":
+                        result = resultAdapter.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            VoiceResponse response = new VoiceResponse(null, status);
+            if (result != null) {
+                response.voiceResult = result;
+            }
+            return response;
+        }
+
+    }
+
 }
@@ -13,11 +13,19 @@ limitations under the License.
 
 package com.aimmatic.natural.voice.rest.response;
 
+import com.aimmatic.natural.core.rest.Json;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 
 /**
  * Voice recognized result
  */
+@JsonAdapter(VoiceResult.Adapter.class)
 public class VoiceResult {
 
     @SerializedName("audioid")
@@ -59,4 +67,37 @@ public class VoiceResult {
         return confidence;
     }
 
+    // read a voice result without reflection
+    static class Adapter extends TypeAdapter<VoiceResult> {
+
+        @Override
+        public void write(JsonWriter out, VoiceResult value) throws IOException {
+            out.beginObject();
+            out.name("audioid").value(value.audioId);
+            out.name("confidence").value(value.confidence);
+            out.endObject();
+        }
+
+        @Override
+        public VoiceResult read(JsonReader in) throws IOException {
+            VoiceResult result = new VoiceResult();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "audioid":
+                        result.audioId = Json.nextString(in);
+                        break;
+                    case "confidence":
+                        result.confidence = (float) Json.nextDouble(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return result;
+        }
+
+    }
+
 }
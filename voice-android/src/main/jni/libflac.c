@@ -2,13 +2,12 @@
 #include <FLAC/all.h>
 #include <android/log.h>
 #include <memory.h>
+#include <stdlib.h>
 
+/* number of samples per channel converted at once, larger input is split into chunks */
 #define READSIZE 960
-
-static FLAC__byte buffer[READSIZE/*samples*/ * 2/*bytes_per_sample*/ *
-                         1/*channels*/]; /* we read the WAVE data into here */
-
-static FLAC__int32 pcm[READSIZE/*samples*/ * 1/*channels*/];
+/* initial size of the reusable output array, grow when a frame is bigger */
+#define OUTPUTSIZE 4096
 
 static FLAC__StreamEncoderWriteStatus writeCallback(const FLAC__StreamEncoder *encoder,
                                                     const FLAC__byte buffer[],
@@ -30,8 +29,14 @@ static void metadataCallback(const FLAC__StreamEncoder *encoder,
 typedef struct {
     jmethodID onEncoded;
     jobject instance;
+    /* env of the thread currently calling into the encoder */
     JNIEnv *env;
     FLAC__StreamEncoder *encoder;
+    /* conversion buffer of READSIZE samples per channel, own by this encoder */
+    FLAC__int32 *pcm;
+    /* reusable java array to hand encoded frame to java, global reference */
+    jbyteArray output;
+    size_t outputSize;
 } CallbackRef;
 
 JNIEXPORT jlong JNICALL
@@ -60,15 +65,20 @@ JNIEXPORT jint JNICALL
 Java_com_aimmatic_natural_voice_android_LibFlac_setMetadata(JNIEnv *env, jobject instance,
                                                             jlong cPointer, jint sampleRate,
                                                             jint channel, jint bps,
-                                                            jint compressLevel) {
+                                                            jint compressLevel, jboolean verify,
+                                                            jint blockSize) {
 
     FLAC__bool ok = true;
     CallbackRef *cbRef = (CallbackRef *) cPointer;
     FLAC__StreamEncoder *encoder = cbRef->encoder;
 
 
-    ok &= FLAC__stream_encoder_set_verify(encoder, true);
+    ok &= FLAC__stream_encoder_set_verify(encoder, verify);
     ok &= FLAC__stream_encoder_set_compression_level(encoder, compressLevel);
+    /* compression level set its own block size, 0 keep it */
+    if (blockSize > 0) {
+        ok &= FLAC__stream_encoder_set_blocksize(encoder, (unsigned int) blockSize);
+    }
     ok &= FLAC__stream_encoder_set_channels(encoder, channel);
     ok &= FLAC__stream_encoder_set_bits_per_sample(encoder, bps);
     ok &= FLAC__stream_encoder_set_sample_rate(encoder, sampleRate);
@@ -77,6 +87,14 @@ Java_com_aimmatic_natural_voice_android_LibFlac_setMetadata(JNIEnv *env, jobject
         return 0;
     }
 
+    free(cbRef->pcm);
+    cbRef->pcm = malloc(READSIZE * channel * sizeof(FLAC__int32));
+    if (cbRef->pcm == NULL) {
+        return 0;
+    }
+
+    /* init write the stream header through the write callback */
+    cbRef->env = env;
     // live stream conversion don't extra callback
     // seek, tell and metadata is suitable for file encoder or pre-encoded
     FLAC__StreamEncoderInitStatus init_status = FLAC__stream_encoder_init_stream(
@@ -92,28 +110,56 @@ Java_com_aimmatic_natural_voice_android_LibFlac_setMetadata(JNIEnv *env, jobject
     return true;
 }
 
+static FLAC__bool encodeSamples(JNIEnv *env, CallbackRef *cbRef, jint channel,
+                                const FLAC__int16 *samples, size_t need) {
+    FLAC__bool ok = true;
+    size_t i, chunk;
+    cbRef->env = env;
+    while (ok && need > 0) {
+        chunk = need < READSIZE ? need : READSIZE;
+        for (i = 0; i < chunk * channel; i++) {
+            cbRef->pcm[i] = (FLAC__int32) samples[i];
+        }
+        ok = FLAC__stream_encoder_process_interleaved(cbRef->encoder, cbRef->pcm,
+                                                      (unsigned int) chunk);
+        samples += chunk * channel;
+        need -= chunk;
+    }
+    return ok;
+}
+
 JNIEXPORT jboolean JNICALL
 Java_com_aimmatic_natural_voice_android_LibFlac_encode(JNIEnv *env, jobject instance,
                                                        jlong cPointer,
                                                        jint channel, jbyteArray in_, jint size) {
+    if ((*env)->GetArrayLength(env, in_) < size) {
+        return false;
+    }
     jbyte *in = (*env)->GetByteArrayElements(env, in_, NULL);
 
     CallbackRef *cbRef = (CallbackRef *) cPointer;
-    FLAC__StreamEncoder *encoder = cbRef->encoder;
-
-    size_t i;
-    size_t need = (size_t) size / 2;
 
-    FLAC__byte *flacBytes = (FLAC__byte *) in;
+    /* audio record write 16 bit samples in native byte order, every android abi is little-endian */
+    FLAC__bool ok = encodeSamples(env, cbRef, channel, (const FLAC__int16 *) in,
+                                  (size_t) size / 2 / channel);
+    /* input is only read, don't copy it back into the java array */
+    (*env)->ReleaseByteArrayElements(env, in_, in, JNI_ABORT);
+    return (jboolean) ok;
+}
 
-    for (i = 0; i < need * channel; i++) {
-        pcm[i] = (FLAC__int32) (((FLAC__int16) (FLAC__int8) flacBytes[2 * i + 1] << 8) |
-                                (FLAC__int16) flacBytes[2 * i]);
+JNIEXPORT jboolean JNICALL
+Java_com_aimmatic_natural_voice_android_LibFlac_encodeDirect(JNIEnv *env, jobject instance,
+                                                             jlong cPointer, jint channel,
+                                                             jobject in_, jint size) {
+    /* direct buffer is read in place, no copy and nothing to release */
+    void *in = (*env)->GetDirectBufferAddress(env, in_);
+    if (in == NULL || (*env)->GetDirectBufferCapacity(env, in_) < size) {
+        return false;
     }
 
-    FLAC__bool ok = FLAC__stream_encoder_process_interleaved(encoder, pcm, (unsigned int) need);
-    (*env)->ReleaseByteArrayElements(env, in_, in, 0);
-    return (jboolean) ok;
+    CallbackRef *cbRef = (CallbackRef *) cPointer;
+    return (jboolean) encodeSamples(env, cbRef, channel, (const FLAC__int16 *) in,
+                                    (size_t) size / 2 / channel);
 }
 
 JNIEXPORT void JNICALL
@@ -122,7 +168,15 @@ Java_com_aimmatic_natural_voice_android_LibFlac_release(JNIEnv *env, jobject ins
 
     CallbackRef *cbRef = (CallbackRef *) cPointer;
     FLAC__StreamEncoder *encoder = cbRef->encoder;
+    /* delete finishes an unfinished stream, the write callback must run on this thread env
+     * and still see the instance and output references */
+    cbRef->env = env;
     FLAC__stream_encoder_delete(encoder);
+    free(cbRef->pcm);
+    if (cbRef->output != NULL) {
+        (*env)->DeleteGlobalRef(env, cbRef->output);
+    }
+    (*env)->DeleteGlobalRef(env, cbRef->instance);
     free(cbRef);
 
 }
@@ -133,6 +187,8 @@ Java_com_aimmatic_natural_voice_android_LibFlac_finish(JNIEnv *env, jobject inst
 
     CallbackRef *cbRef = (CallbackRef *) cPointer;
     FLAC__StreamEncoder *encoder = cbRef->encoder;
+    /* finish flush the remaining frames through the write callback */
+    cbRef->env = env;
     FLAC__stream_encoder_finish(encoder);
 
 }
@@ -143,12 +199,30 @@ FLAC__StreamEncoderWriteStatus writeCallback(const FLAC__StreamEncoder *encoder,
                                              void *client_data) {
     (void) encoder, (void) client_data;
     CallbackRef *cbRef = (CallbackRef *) client_data;
-    jbyteArray jbytes = (*cbRef->env)->NewByteArray(cbRef->env, bytes);
-    if (NULL == jbytes) {
+    JNIEnv *env = cbRef->env;
+    /* reuse the same java array for every frame, only grow it when a frame doesn't fit */
+    if (cbRef->output == NULL || cbRef->outputSize < bytes) {
+        size_t size = cbRef->outputSize > 0 ? cbRef->outputSize : OUTPUTSIZE;
+        while (size < bytes) {
+            size *= 2;
+        }
+        jbyteArray local = (*env)->NewByteArray(env, (jsize) size);
+        if (NULL == local) {
+            return FLAC__STREAM_ENCODER_WRITE_STATUS_FATAL_ERROR;
+        }
+        if (cbRef->output != NULL) {
+            (*env)->DeleteGlobalRef(env, cbRef->output);
+        }
+        cbRef->output = (*env)->NewGlobalRef(env, local);
+        cbRef->outputSize = size;
+        (*env)->DeleteLocalRef(env, local);
+    }
+    (*env)->SetByteArrayRegion(env, cbRef->output, 0, (jsize) bytes, (const jbyte *) buffer);
+    (*env)->CallVoidMethod(env, cbRef->instance, cbRef->onEncoded, cbRef->output, (jint) bytes);
+    if ((*env)->ExceptionCheck(env)) {
+        /* let the exception propagate to java, don't encode any further */
         return FLAC__STREAM_ENCODER_WRITE_STATUS_FATAL_ERROR;
     }
-    (*cbRef->env)->SetByteArrayRegion(cbRef->env, jbytes, 0, (jsize) bytes, (const jbyte *) buffer);
-    (*cbRef->env)->CallVoidMethod(cbRef->env, cbRef->instance, cbRef->onEncoded, jbytes, bytes);
 
     return FLAC__STREAM_ENCODER_WRITE_STATUS_OK;
 }
@@ -165,6 +239,8 @@ Java_com_aimmatic_natural_voice_android_LibFlac_convertRawPCM(JNIEnv *env, jclas
     FLAC__StreamEncoder *encoder = 0;
     FLAC__StreamEncoderInitStatus init_status;
     FILE *fin;
+    FLAC__byte *buffer; /* we read the WAVE data into here */
+    FLAC__int32 *pcm;
     unsigned sample_rate = (unsigned int) sampleRate;
     unsigned channels = (unsigned int) channel;
     unsigned bps = (unsigned int) bitPerSecond;
@@ -181,6 +257,18 @@ Java_com_aimmatic_natural_voice_android_LibFlac_convertRawPCM(JNIEnv *env, jclas
         return false;
     }
 
+    /* allocate the conversion buffers, local to this call so conversions can run in parallel */
+    buffer = malloc(READSIZE * channels * 2/*bytes_per_sample*/);
+    pcm = malloc(READSIZE * channels * sizeof(FLAC__int32));
+    if (buffer == NULL || pcm == NULL) {
+        __android_log_print(ANDROID_LOG_ERROR, "libflac", "allocating buffer\n");
+        free(buffer);
+        free(pcm);
+        FLAC__stream_encoder_delete(encoder);
+        fclose(fin);
+        return false;
+    }
+
     ok &= FLAC__stream_encoder_set_verify(encoder, true);
     ok &= FLAC__stream_encoder_set_compression_level(encoder, (unsigned int) compression);
     ok &= FLAC__stream_encoder_set_channels(encoder, channels);
@@ -224,6 +312,8 @@ Java_com_aimmatic_natural_voice_android_LibFlac_convertRawPCM(JNIEnv *env, jclas
     ok &= FLAC__stream_encoder_finish(encoder);
 
     FLAC__stream_encoder_delete(encoder);
+    free(buffer);
+    free(pcm);
     fclose(fin);
 
     (*env)->ReleaseStringUTFChars(env, fileIn_, fileIn);
@@ -0,0 +1,69 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.aimmatic.natural.core.rest;
+
+import com.aimmatic.natural.voice.rest.Language;
+import com.aimmatic.natural.voice.rest.response.LangResponse;
+import com.aimmatic.natural.voice.rest.response.UploadSessionResponse;
+import com.aimmatic.natural.voice.rest.response.VoiceResponse;
+import com.google.gson.Gson;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JsonTest {
+
+    @Test
+    public void testVoiceResponse() {
+        Gson gson = Json.getGson();
+        VoiceResponse response = gson.fromJson("{\"status\":{\"code\":0,\"message\":\"ok\",\"requestId\":\"req\"}," +
+                "\"data\":{\"audioid\":\"a1\",\"confidence\":0.5},\"other\":[{}]}", VoiceResponse.class);
+        Assert.assertEquals(0, response.getStatus().getCode());
+        Assert.assertEquals("req", response.getStatus().getRequestId());
+        Assert.assertEquals("a1", response.getID());
+        Assert.assertEquals(0.5f, response.getVoiceResult().getConfidence(), 0);
+        // a response without data still has an empty result
+        response = gson.fromJson("{\"status\":{\"code\":500,\"message\":null}}", VoiceResponse.class);
+        Assert.assertEquals(500, response.getStatus().getCode());
+        Assert.assertNull(response.getID());
+        // it can be written and read back
+        response = gson.fromJson(gson.toJson(gson.fromJson("{\"data\":{\"audioid\":\"a2\"}}", VoiceResponse.class)),
+                VoiceResponse.class);
+        Assert.assertEquals("a2", response.getID());
+    }
+
+    @Test
+    public void testUploadSessionResponse() {
+        UploadSessionResponse response = Json.getGson().fromJson(
+                "{\"data\":{\"id\":\"s1\",\"chunks\":[0,1,2,3,4,5,6,7,8,9]}}", UploadSessionResponse.class);
+        Assert.assertEquals("s1", response.getSession().getId());
+        Assert.assertEquals(10, response.getSession().getChunks().length);
+        Assert.assertEquals(9, response.getSession().getChunks()[9]);
+        response = Json.getGson().fromJson("{\"data\":{\"id\":\"s2\"}}", UploadSessionResponse.class);
+        Assert.assertEquals(0, response.getSession().getChunks().length);
+    }
+
+    @Test
+    public void testLangResponse() {
+        LangResponse response = Json.getGson().fromJson("{\"lang\":[{\"name\":\"Deutsch (Deutschland)\"," +
+                "\"fullname\":\"German (Germany)\",\"speechlang\":\"de-DE\",\"nlplang\":\"de\"},null]}", LangResponse.class);
+        Language[] languages = response.getLanguages();
+        Assert.assertEquals(2, languages.length);
+        Assert.assertEquals("German (Germany)", languages[0].getLangEn());
+        Assert.assertEquals("de", languages[0].getLangCode());
+        Assert.assertNull(languages[1]);
+    }
+
+}
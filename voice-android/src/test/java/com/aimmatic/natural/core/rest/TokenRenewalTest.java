@@ -0,0 +1,172 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.core.rest;
+
+import com.aimmatic.natural.oauth.AccessToken;
+import com.aimmatic.natural.oauth.Profile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+
+public class TokenRenewalTest {
+
+    // app context keeping the token in memory
+    private static class TokenContext implements AppContext {
+
+        volatile AccessToken accessToken;
+
+        @Override
+        public String getHost() {
+            return host;
+        }
+
+        @Override
+        public String getApiKey() {
+            return null;
+        }
+
+        @Override
+        public OkHttpClient getOkHttpClient() {
+            return HttpClients.getBaseClient();
+        }
+
+        @Override
+        public AccessToken getAccessToken() {
+            return accessToken;
+        }
+
+        @Override
+        public Profile getProfile() {
+            return null;
+        }
+
+        @Override
+        public void setAppId(String appId) {
+        }
+
+        @Override
+        public String getAppId() {
+            return null;
+        }
+
+        @Override
+        public void setCustomerId(String customerId) {
+        }
+
+        @Override
+        public String getCustomerId() {
+            return null;
+        }
+
+        @Override
+        public File getDataDir() {
+            return null;
+        }
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        final TokenContext ctx = new TokenContext();
+        final AccessToken expired = new AccessToken("expired", "refresh");
+        ctx.accessToken = expired;
+        final AtomicInteger renewals = new AtomicInteger();
+        final TokenRenewal tokenRenewal = new TokenRenewal(ctx, new TokenRenewal.Renewer() {
+            @Override
+            public AccessToken renew(String refreshToken) throws IOException {
+                renewals.incrementAndGet();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                AccessToken accessToken = new AccessToken("fresh", refreshToken);
+                ctx.accessToken = accessToken;
+                return accessToken;
+            }
+        });
+        final int callers = 8;
+        final CyclicBarrier start = new CyclicBarrier(callers);
+        final AccessToken[] results = new AccessToken[callers];
+        Thread[] threads = new Thread[callers];
+        for (int i = 0; i < callers; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        results[index] = tokenRenewal.renew(expired);
+                    } catch (Exception ignored) {
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals("Expect a single renewal request", 1, renewals.get());
+        for (AccessToken result : results) {
+            Assert.assertNotNull(result);
+            Assert.assertEquals("fresh", result.getToken());
+        }
+    }
+
+    @Test
+    public void testRenewBeforeExpiry() {
+        final TokenContext ctx = new TokenContext();
+        final AtomicInteger renewals = new AtomicInteger();
+        TokenRenewal tokenRenewal = new TokenRenewal(ctx, new TokenRenewal.Renewer() {
+            @Override
+            public AccessToken renew(String refreshToken) {
+                renewals.incrementAndGet();
+                ctx.accessToken = new AccessToken("fresh", refreshToken, System.currentTimeMillis() + 3600 * 1000);
+                return ctx.accessToken;
+            }
+        });
+        AccessToken valid = new AccessToken("valid", "refresh", System.currentTimeMillis() + 3600 * 1000);
+        Assert.assertSame(valid, tokenRenewal.ensureFresh(valid));
+        Assert.assertEquals("Valid token must not be renewed", 0, renewals.get());
+
+        ctx.accessToken = new AccessToken("expiring", "refresh", System.currentTimeMillis() + TokenRenewal.RENEW_AHEAD / 2);
+        Assert.assertEquals("fresh", tokenRenewal.ensureFresh(ctx.accessToken).getToken());
+        Assert.assertEquals(1, renewals.get());
+    }
+
+    @Test
+    public void testRenewalFailure() {
+        TokenContext ctx = new TokenContext();
+        ctx.accessToken = new AccessToken("expired", "refresh");
+        TokenRenewal tokenRenewal = new TokenRenewal(ctx, new TokenRenewal.Renewer() {
+            @Override
+            public AccessToken renew(String refreshToken) throws IOException {
+                throw new IOException("offline");
+            }
+        });
+        try {
+            tokenRenewal.renew(ctx.accessToken);
+            Assert.fail("Expect renewal to fail");
+        } catch (IOException e) {
+            Assert.assertEquals("offline", e.getMessage());
+        }
+    }
+
+}
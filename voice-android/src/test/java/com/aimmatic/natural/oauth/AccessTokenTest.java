@@ -0,0 +1,51 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.oauth;
+
+import com.aimmatic.natural.core.rest.Json;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AccessTokenTest {
+
+    @Test
+    public void testExpiresIn() {
+        TokenResponse tokenResponse = Json.getGson().fromJson(
+                "{\"data\":{\"token\":\"t\",\"refreshToken\":\"r\",\"expires_in\":3600}}", TokenResponse.class);
+        AccessToken accessToken = tokenResponse.getAccessToken(1000);
+        Assert.assertEquals("t", accessToken.getToken());
+        Assert.assertEquals(1000 + 3600 * 1000, accessToken.getExpiresAt());
+    }
+
+    @Test
+    public void testTokenResponse() {
+        TokenResponse tokenResponse = Json.getGson().fromJson("{\"Code\":200,\"message\":null,\"extra\":{\"a\":[1]}," +
+                "\"data\":{\"token\":\"t\",\"refreshToken\":\"r\",\"expiresAt\":5000}}", TokenResponse.class);
+        Assert.assertEquals(200, tokenResponse.getCode());
+        Assert.assertNull(tokenResponse.getMessage());
+        Assert.assertEquals("r", tokenResponse.getAccessToken().getRefreshToken());
+        Assert.assertEquals(5000, tokenResponse.getAccessToken().getExpiresAt());
+        Assert.assertNull(Json.getGson().fromJson("{\"Code\":401,\"data\":null}", TokenResponse.class).getAccessToken());
+    }
+
+    @Test
+    public void testJwtExpiry() {
+        // header {"alg":"none"}, payload {"sub":"user","exp":1700000000}
+        String jwt = "eyJhbGciOiJub25lIn0.eyJzdWIiOiJ1c2VyIiwiZXhwIjoxNzAwMDAwMDAwfQ.sig";
+        Assert.assertEquals(1700000000L * 1000, new AccessToken(jwt, "r").getExpiresAt());
+        Assert.assertEquals(0, new AccessToken("opaque-token", "r").getExpiresAt());
+    }
+
+}
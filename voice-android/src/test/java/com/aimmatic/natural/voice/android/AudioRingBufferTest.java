@@ -0,0 +1,107 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.android;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+public class AudioRingBufferTest {
+
+    @Test
+    public void testReadInOrder() {
+        AudioRingBuffer ring = new AudioRingBuffer(4, 2);
+        Assert.assertTrue("New ring must be empty", ring.isEmpty());
+        for (int i = 0; i < 3; i++) {
+            ring.writeFrame().put(0, (byte) i);
+            ring.commitWrite(1, i);
+        }
+        for (int i = 0; i < 3; i++) {
+            Assert.assertFalse("Ring must have frame " + i, ring.isEmpty());
+            Assert.assertEquals(i, ring.readFrame().get(0));
+            Assert.assertEquals(1, ring.readFrame().limit());
+            Assert.assertEquals(1, ring.readSize());
+            Assert.assertEquals(i, ring.readTimestamp());
+            ring.commitRead();
+        }
+        Assert.assertTrue("Ring must be empty after drained", ring.isEmpty());
+    }
+
+    @Test
+    public void testDropWhenFull() {
+        AudioRingBuffer ring = new AudioRingBuffer(2, 2);
+        for (int i = 0; i < 5; i++) {
+            ring.writeFrame().put(0, (byte) i);
+            ring.commitWrite(2, i);
+        }
+        Assert.assertEquals("Expect 3 frames dropped", 3, ring.getOverrunCount());
+        // the oldest frame are kept
+        Assert.assertEquals(0, ring.readFrame().get(0));
+        ring.commitRead();
+        Assert.assertEquals(1, ring.readFrame().get(0));
+        ring.commitRead();
+        Assert.assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void testReadSamples() {
+        AudioRingBuffer ring = new AudioRingBuffer(2, 8);
+        ring.writeFrame().asShortBuffer().put(new short[]{-1, 1500, Short.MIN_VALUE});
+        ring.commitWrite(6, 0);
+        ShortBuffer samples = ring.readSamples();
+        Assert.assertEquals(3, samples.limit());
+        Assert.assertEquals(-1, samples.get(0));
+        Assert.assertEquals(1500, samples.get(1));
+        Assert.assertEquals(Short.MIN_VALUE, samples.get(2));
+    }
+
+    @Test
+    public void testConcurrentProducerConsumer() throws InterruptedException {
+        final int total = 100000;
+        final AudioRingBuffer ring = new AudioRingBuffer(8, 4);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int i = 0;
+                while (i < total) {
+                    ByteBuffer frame = ring.writeFrame();
+                    frame.putInt(0, i);
+                    ring.commitWrite(4, i);
+                    if (ring.getOverrunCount() == 0) {
+                        i++;
+                    } else {
+                        // consumer is too slow, the frame was dropped so test can't verify the order
+                        return;
+                    }
+                }
+            }
+        });
+        producer.start();
+        int expected = 0;
+        while (producer.isAlive() || !ring.isEmpty()) {
+            if (ring.isEmpty()) {
+                ring.awaitFrame(1);
+                continue;
+            }
+            Assert.assertEquals(expected, ring.readFrame().getInt(0));
+            Assert.assertEquals(expected, ring.readTimestamp());
+            ring.commitRead();
+            expected++;
+        }
+        producer.join();
+    }
+
+}
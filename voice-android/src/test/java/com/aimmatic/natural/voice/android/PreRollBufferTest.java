@@ -0,0 +1,53 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.android;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class PreRollBufferTest {
+
+    @Test
+    public void testKeepMostRecentFrames() {
+        // 10 byte window with 4 byte frame hold 3 frames
+        PreRollBuffer preRoll = new PreRollBuffer(10, 4);
+        ByteBuffer frame = AudioRingBuffer.newFrame(4);
+        for (int i = 0; i < 5; i++) {
+            frame.put(0, (byte) i);
+            preRoll.write(frame, i == 4 ? 2 : 4);
+            Assert.assertEquals("Source position must be kept", 0, frame.position());
+        }
+        Assert.assertEquals(3, preRoll.count());
+        Assert.assertEquals(2, preRoll.frame(0).get(0));
+        Assert.assertEquals(3, preRoll.frame(1).get(0));
+        Assert.assertEquals(4, preRoll.frame(2).get(0));
+        Assert.assertEquals(2, preRoll.size(2));
+        Assert.assertEquals(2, preRoll.frame(2).limit());
+    }
+
+    @Test
+    public void testClearReuseMemory() {
+        PreRollBuffer preRoll = new PreRollBuffer(8, 4);
+        ByteBuffer frame = AudioRingBuffer.newFrame(4);
+        preRoll.write(frame, 4);
+        ByteBuffer memory = preRoll.frame(0);
+        preRoll.clear();
+        Assert.assertEquals(0, preRoll.count());
+        preRoll.write(frame, 4);
+        Assert.assertSame("Frame memory must be reused", memory, preRoll.frame(0));
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.android;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+
+public class RecordingBufferTest {
+
+    private static final MediaType FLAC = MediaType.parse("audio/flac");
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("recording", ".flac");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testKeepInMemory() throws IOException {
+        RecordingBuffer recording = new RecordingBuffer(file, 64 * 1024);
+        byte[] audio = write(recording, 40000);
+        recording.close();
+        Assert.assertTrue("Short recording must stay in memory", recording.isInMemory());
+        Assert.assertFalse("Short recording must not create a file", file.exists());
+        RequestBody body = recording.requestBody(FLAC);
+        Assert.assertEquals(audio.length, body.contentLength());
+        Assert.assertTrue(Arrays.equals(audio, read(body)));
+
+        // written on demand when the upload must be retried
+        Assert.assertTrue(Arrays.equals(audio, read(recording.toFile())));
+        recording.release();
+        Assert.assertFalse("Released recording must delete its file", file.exists());
+    }
+
+    @Test
+    public void testSpillToDisk() throws IOException {
+        RecordingBuffer recording = new RecordingBuffer(file, 20000);
+        byte[] audio = write(recording, 50000);
+        recording.close();
+        Assert.assertFalse("Long recording must be written to the file", recording.isInMemory());
+        Assert.assertEquals(audio.length, recording.size());
+        Assert.assertTrue(Arrays.equals(audio, read(file)));
+        Assert.assertTrue(Arrays.equals(audio, read(recording.requestBody(FLAC))));
+        recording.release();
+        try {
+            recording.requestBody(FLAC);
+            Assert.fail("Expect released recording to fail");
+        } catch (IOException ignored) {
+        }
+    }
+
+    // write audio in small frames like the encoder does
+    private static byte[] write(RecordingBuffer recording, int length) throws IOException {
+        byte[] audio = new byte[length];
+        for (int i = 0; i < length; i++) {
+            audio[i] = (byte) (i * 7);
+        }
+        for (int offset = 0; offset < length; offset += 1000) {
+            recording.write(audio, offset, Math.min(1000, length - offset));
+        }
+        return audio;
+    }
+
+    private static byte[] read(RequestBody body) throws IOException {
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        return buffer.readByteArray();
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                offset += in.read(data, offset, data.length - offset);
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+}
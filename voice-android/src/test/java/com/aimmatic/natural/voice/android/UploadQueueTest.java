@@ -0,0 +1,158 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.android;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+public class UploadQueueTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("upload-queue", "");
+        dir.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testSurviveRestart() throws IOException {
+        UploadQueue queue = new UploadQueue(dir);
+        UploadQueue.Entry first = queue.add(newAudio("first"), "audio/flac", "en-US", 10.5, 100.25, 16000);
+        UploadQueue.Entry second = queue.add(newAudio("second"), "audio/wav", "km-KH", 0, 0, 8000);
+        queue.remove(first);
+        Assert.assertFalse("Removed audio must be deleted", first.file.exists());
+
+        // a new queue on the same directory replay the journal
+        List<UploadQueue.Entry> pending = new UploadQueue(dir).pending();
+        Assert.assertEquals(1, pending.size());
+        UploadQueue.Entry entry = pending.get(0);
+        Assert.assertEquals(second.id, entry.id);
+        Assert.assertEquals(second.createdAt, entry.createdAt);
+        Assert.assertEquals("audio/wav", entry.mediaType);
+        Assert.assertEquals("km-KH", entry.language);
+        Assert.assertEquals(8000, entry.sampleRate);
+        Assert.assertTrue("Queued audio must be kept", entry.file.exists());
+    }
+
+    @Test
+    public void testAdoptOrphanAudio() throws IOException {
+        UploadQueue queue = new UploadQueue(dir);
+        UploadQueue.Entry entry = queue.add(newAudio("audio"), "audio/flac", "en-US", 0, 0, 16000);
+        // an audio moved in right before a crash, its ADD line was never written
+        File orphan = new File(dir, "orphan.audio");
+        FileOutputStream out = new FileOutputStream(orphan);
+        out.write(new byte[]{'R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'A', 'V', 'E', 'f', 'm', 't', ' ',
+                16, 0, 0, 0, 1, 0, 1, 0, (byte) 0x80, 0x3e, 0, 0, 0, 0, 0, 0});
+        out.close();
+        // an entry which audio is gone
+        entry.file.delete();
+
+        List<UploadQueue.Entry> pending = new UploadQueue(dir).pending();
+        Assert.assertEquals(1, pending.size());
+        Assert.assertEquals("orphan", pending.get(0).id);
+        Assert.assertEquals("audio/wav", pending.get(0).mediaType);
+        Assert.assertEquals(16000, pending.get(0).sampleRate);
+        Assert.assertTrue("Orphan audio must be kept", orphan.exists());
+        // the adopted entry is in the journal
+        Assert.assertEquals(1, new UploadQueue(dir).size());
+    }
+
+    @Test
+    public void testAddFailedAudio() throws IOException {
+        UploadQueue queue = new UploadQueue(dir);
+        queue.add(newAudio("audio"), "audio/flac", "en-US", 0, 0, 16000, 1, 12345);
+        UploadQueue.Entry entry = queue.pending().get(0);
+        Assert.assertEquals(1, entry.attempts);
+        Assert.assertEquals(12345, entry.nextAttemptAt);
+        entry = new UploadQueue(dir).pending().get(0);
+        Assert.assertEquals(1, entry.attempts);
+        Assert.assertEquals(12345, entry.nextAttemptAt);
+    }
+
+    @Test
+    public void testCompactJournal() throws IOException {
+        UploadQueue queue = new UploadQueue(dir);
+        UploadQueue.Entry kept = queue.add(newAudio("kept"), "audio/flac", "en-US", 0, 0, 16000);
+        for (int i = 0; i < 100; i++) {
+            queue.remove(queue.add(newAudio("audio" + i), "audio/flac", "en-US", 0, 0, 16000));
+        }
+        File journal = new File(dir, "journal");
+        Assert.assertTrue("Journal must be compacted, size " + journal.length(), journal.length() < 40 * 200);
+        List<UploadQueue.Entry> pending = new UploadQueue(dir).pending();
+        Assert.assertEquals(1, pending.size());
+        Assert.assertEquals(kept.id, pending.get(0).id);
+    }
+
+    @Test
+    public void testKeepRetryState() throws IOException {
+        UploadQueue queue = new UploadQueue(dir);
+        UploadQueue.Entry entry = queue.add(newAudio("audio"), "audio/flac", "en-US", 0, 0, 16000);
+        queue.setRetry(entry, 3, 123456789L);
+        UploadQueue.Entry restored = new UploadQueue(dir).pending().get(0);
+        Assert.assertEquals("Backoff must continue after restart", 3, restored.attempts);
+        Assert.assertEquals(123456789L, restored.nextAttemptAt);
+    }
+
+    @Test
+    public void testKeepUploadSession() throws IOException {
+        UploadQueue queue = new UploadQueue(dir);
+        UploadQueue.Entry entry = queue.add(newAudio("audio"), "audio/flac", "en-US", 0, 0, 16000);
+        queue.setSession(entry, "session-1", 64 * 1024);
+        UploadQueue.Entry restored = new UploadQueue(dir).pending().get(0);
+        Assert.assertEquals("session-1", restored.uploadSession);
+        Assert.assertEquals(64 * 1024, restored.uploadChunkSize);
+        queue.setSession(entry, null, 0);
+        Assert.assertNull(new UploadQueue(dir).pending().get(0).uploadSession);
+    }
+
+    @Test
+    public void testDropSessionWithoutChunkSize() throws IOException {
+        UploadQueue queue = new UploadQueue(dir);
+        UploadQueue.Entry entry = queue.add(newAudio("audio"), "audio/flac", "en-US", 0, 0, 16000);
+        // a session line written by an older version
+        FileOutputStream out = new FileOutputStream(new File(dir, "journal"), true);
+        out.write(("SES\t" + entry.id + "\tsession-1\n").getBytes("UTF-8"));
+        out.close();
+        UploadQueue.Entry restored = new UploadQueue(dir).pending().get(0);
+        Assert.assertNull("Session of unknown chunk size must not be resumed", restored.uploadSession);
+    }
+
+    private File newAudio(String content) throws IOException {
+        File file = File.createTempFile("audio", "");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+        return file;
+    }
+
+}
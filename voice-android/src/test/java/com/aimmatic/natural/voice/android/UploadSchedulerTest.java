@@ -0,0 +1,159 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.android;
+
+import android.content.ContextWrapper;
+
+import com.aimmatic.natural.voice.rest.TestAppContext;
+import com.aimmatic.natural.voice.rest.response.VoiceResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.MediaType;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class UploadSchedulerTest {
+
+    private static final MediaType FLAC = MediaType.parse("audio/flac");
+    private static final Pattern FILENAME = Pattern.compile("filename=\"([^\"]+)\"");
+
+    private MockWebServer server;
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        // answer with the name of the uploaded audio so a result can be match to its recording
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                Matcher matcher = FILENAME.matcher(request.getBody().readUtf8());
+                String name = matcher.find() ? matcher.group(1) : "";
+                return new MockResponse().setBody("{\"data\":{\"audioid\":\"" + name + "\"}}");
+            }
+        });
+        server.start();
+        dir = File.createTempFile("upload-scheduler", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testBatchOnOneConnection() throws Exception {
+        TestAppContext appContext = new TestAppContext("http://" + server.getHostName() + ":" + server.getPort());
+        final Map<String, String> results = Collections.synchronizedMap(new HashMap<String, String>());
+        UploadScheduler scheduler = new UploadScheduler(new UploadQueue(new File(dir, "queue")),
+                new ContextWrapper(null), appContext, new UploadScheduler.Listener() {
+            @Override
+            public void onUploadComplete(UploadQueue.Entry entry, VoiceResponse response) {
+                results.put(((UploadScheduler.MemoryEntry) entry).recording.getName(), response.getID());
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            scheduler.send(newRecording("recording-" + i + ".flac"), FLAC, "en-US", 0, 0, 16000);
+        }
+        Assert.assertEquals("Recordings must wait for the batch window", 0, server.getRequestCount());
+
+        // what the scheduler thread does when the batch window expire
+        scheduler.drain();
+        Assert.assertEquals(3, server.getRequestCount());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("Batch must be sent on a single connection", i, server.takeRequest().getSequenceNumber());
+        }
+        Assert.assertEquals(3, results.size());
+        for (int i = 0; i < 3; i++) {
+            String name = "recording-" + i + ".flac";
+            Assert.assertEquals("Result must map back to its recording", name, results.get(name));
+        }
+    }
+
+    @Test
+    public void testStoppedSchedulerOnlyQueues() throws IOException {
+        TestAppContext appContext = new TestAppContext("http://" + server.getHostName() + ":" + server.getPort());
+        File queueDir = new File(dir, "queue");
+        UploadScheduler scheduler = new UploadScheduler(new UploadQueue(queueDir), new ContextWrapper(null), appContext,
+                new UploadScheduler.Listener() {
+                    @Override
+                    public void onUploadComplete(UploadQueue.Entry entry, VoiceResponse response) {
+                        Assert.fail("Stopped scheduler must not send");
+                    }
+                });
+        scheduler.send(newRecording("waiting.flac"), FLAC, "en-US", 0, 0, 16000);
+        // the recording waiting for the batch window is kept for the next run
+        scheduler.stop();
+        // a send task still running after the service is destroyed
+        scheduler.send(newRecording("late.flac"), FLAC, "en-US", 0, 0, 16000);
+        scheduler.start();
+        scheduler.drain();
+        Assert.assertEquals(0, server.getRequestCount());
+        Assert.assertEquals(2, new UploadQueue(queueDir).size());
+    }
+
+    @Test
+    public void testBackoffDelay() {
+        Random random = new Random(1);
+        for (int attempts = 1; attempts < 40; attempts++) {
+            long max = Math.min(UploadScheduler.BASE_DELAY << Math.min(attempts - 1, 20), UploadScheduler.MAX_DELAY);
+            long delay = UploadScheduler.backoffDelay(attempts, random);
+            Assert.assertTrue("Delay " + delay + " too long at attempt " + attempts, delay <= max);
+            Assert.assertTrue("Delay " + delay + " too short at attempt " + attempts, delay >= max / 2);
+        }
+    }
+
+    @Test
+    public void testRetryable() {
+        Assert.assertTrue(UploadScheduler.isRetryable(500));
+        Assert.assertTrue(UploadScheduler.isRetryable(503));
+        Assert.assertTrue(UploadScheduler.isRetryable(429));
+        Assert.assertTrue(UploadScheduler.isRetryable(408));
+        Assert.assertFalse(UploadScheduler.isRetryable(400));
+        Assert.assertFalse(UploadScheduler.isRetryable(413));
+    }
+
+    // a short recording kept in memory
+    private RecordingBuffer newRecording(String name) throws IOException {
+        RecordingBuffer recording = new RecordingBuffer(new File(dir, name), 64 * 1024);
+        recording.write(new byte[1000], 0, 1000);
+        recording.close();
+        return recording;
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.android;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VoiceRecorderServiceTest {
+
+    @Test
+    public void testSendExecutorBound() throws InterruptedException {
+        ThreadPoolExecutor executor = VoiceRecorderService.newSendExecutor(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                running.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.incrementAndGet();
+            }
+        };
+        int accepted = 2 + VoiceRecorderService.SEND_QUEUE_CAPACITY;
+        for (int i = 0; i < accepted; i++) {
+            executor.execute(task);
+        }
+        try {
+            executor.execute(task);
+            Assert.fail("Expect a full executor to reject the task");
+        } catch (RejectedExecutionException ignored) {
+        }
+        Assert.assertEquals(VoiceRecorderService.SEND_QUEUE_CAPACITY, executor.getQueue().size());
+        Assert.assertTrue("At most 2 tasks must run at a time", running.get() <= 2);
+
+        // the tasks already waiting still run after shutdown
+        executor.shutdown();
+        release.countDown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(accepted, done.get());
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.detector;
+
+import com.aimmatic.natural.voice.encoder.AudioMeta;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+public class EnergyVoiceActivityDetectorTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    // 40ms buffer
+    private static final int BUFFER_SAMPLES = 640;
+
+    private final Random random = new Random(42);
+    private long sampleIndex;
+
+    @Test
+    public void testQuietSpeakerInQuietRoom() {
+        VoiceActivityDetector detector = newDetector();
+        Assert.assertFalse("Silence must not be voice", feed(detector, 50, 0, 25));
+        Assert.assertTrue("Quiet voice must be heard", feed(detector, 50, 600, 5));
+    }
+
+    @Test
+    public void testLoudRoomDoesNotTrigger() {
+        VoiceActivityDetector detector = newDetector();
+        // amplitude above the old fixed threshold of 1500
+        Assert.assertFalse("Loud noise must not be voice", feed(detector, 2000, 0, 50));
+        Assert.assertTrue("Voice over loud noise must be heard", feed(detector, 2000, 8000, 5));
+    }
+
+    @Test
+    public void testSpeechAtStart() {
+        VoiceActivityDetector detector = newDetector();
+        // the speaker is already talking while the noise floor is estimated
+        feed(detector, 50, 3000, 7);
+        // a short pause between two words
+        feed(detector, 50, 0, 1);
+        Assert.assertTrue("Voice after the first pause must be heard", feed(detector, 50, 3000, 5));
+    }
+
+    @Test
+    public void testSmallNegativeSample() {
+        VoiceActivityDetector detector = newDetector();
+        feed(detector, 0, 0, 25);
+        // a tiny negative sample -1 is 0xFFFF, it must not be heard as a loud sample
+        ShortBuffer samples = ShortBuffer.allocate(BUFFER_SAMPLES);
+        for (int i = 0; i < BUFFER_SAMPLES; i++) {
+            samples.put(i, (short) -1);
+        }
+        for (int i = 0; i < 10; i++) {
+            Assert.assertFalse(detector.isHearingVoice(samples));
+        }
+    }
+
+    private VoiceActivityDetector newDetector() {
+        VoiceActivityDetector detector = new EnergyVoiceActivityDetector();
+        detector.initialize(new AudioMeta(SAMPLE_RATE, 1, 16));
+        return detector;
+    }
+
+    // feed white noise mix with a 200Hz tone, return true if any buffer is voice
+    private boolean feed(VoiceActivityDetector detector, int noise, int tone, int buffers) {
+        boolean voice = false;
+        ShortBuffer samples = ShortBuffer.allocate(BUFFER_SAMPLES);
+        for (int b = 0; b < buffers; b++) {
+            for (int i = 0; i < BUFFER_SAMPLES; i++) {
+                double t = (double) sampleIndex++ / SAMPLE_RATE;
+                int sample = (int) (tone * Math.sin(2 * Math.PI * 200 * t) + noise * random.nextGaussian());
+                sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+                samples.put(i, (short) sample);
+            }
+            voice |= detector.isHearingVoice(samples);
+        }
+        return voice;
+    }
+
+}
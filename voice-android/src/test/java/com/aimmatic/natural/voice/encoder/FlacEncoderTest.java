@@ -0,0 +1,44 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.encoder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FlacEncoderTest {
+
+    @Test
+    public void testAdjustCompression() {
+        // slow device step down but never below min
+        Assert.assertEquals(4, FlacEncoder.adjustCompression(5, 0.8, 2, 8));
+        Assert.assertEquals(2, FlacEncoder.adjustCompression(2, 0.8, 2, 8));
+        // fast device step up but never above max
+        Assert.assertEquals(6, FlacEncoder.adjustCompression(5, 0.05, 2, 8));
+        Assert.assertEquals(6, FlacEncoder.adjustCompression(6, 0.05, 2, 6));
+        // within budget the level is kept
+        Assert.assertEquals(5, FlacEncoder.adjustCompression(5, 0.3, 2, 8));
+    }
+
+    @Test
+    public void testAdaptiveBounds() {
+        FlacEncoder encoder = new FlacEncoder(8).setAdaptiveCompression(1, 5);
+        Assert.assertEquals(5, encoder.getCompression());
+        try {
+            new FlacEncoder().setAdaptiveCompression(6, 3);
+            Assert.fail("expect min greater than max to be rejected");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+}
@@ -13,15 +13,15 @@ limitations under the License.
 
 package com.aimmatic.natural.voice.rest;
 
-import com.aimmatic.natural.voice.rest.response.LangResponse;
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 
 import okhttp3.Call;
 import okhttp3.Callback;
@@ -33,6 +33,8 @@ public class GetLangTest {
     public void testGetLanguage() throws InterruptedException, IOException {
         final AsyncWait cdl = new AsyncWait(1);
         TestAppContext appContext = new TestAppContext();
+        // without a stored catalogue the request is not conditional and always get a 200
+        new File(appContext.getDataDir(), LanguageCache.CATALOGUE).delete();
         Language.loadLanguage(appContext, new Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
@@ -42,14 +44,9 @@ public class GetLangTest {
 
             @Override
             public void onResponse(Call call, Response response) throws IOException {
-                if (response.code() == 200 && response.body() != null) {
-                    String resp = response.body().string();
-                    LangResponse lr = new Gson().fromJson(resp, LangResponse.class);
-                    cdl.response = new Gson().toJson(lr.getLanguages());
-                    cdl.failed = false;
-                } else {
-                    cdl.failed = true;
-                }
+                // the body can still be read after it has been stored
+                cdl.failed = response.code() != 200 || Language.readLanguages(new JsonReader(response.body().charStream())) == null;
+                response.close();
                 cdl.countDown();
             }
         });
@@ -57,11 +54,29 @@ public class GetLangTest {
         Assert.assertFalse("Loading language failed", cdl.failed);
         File file = new File(appContext.getDataDir(), "aimmatic-speech-lang.json");
         Assert.assertTrue("File not existed", file.exists());
-        FileInputStream in = new FileInputStream(file);
-        byte[] bf = new byte[in.available()];
-        in.read(bf);
+        Reader in = new LanguageCache(appContext.getDataDir()).open();
+        Language[] languages = Language.readLanguages(new JsonReader(in));
         in.close();
-        Assert.assertTrue("Response is not identical", new String(bf).compareTo((String) cdl.response) == 0);
+        Assert.assertNotNull("Stored response has no language", languages);
+        Assert.assertTrue("Stored response has no language", languages.length > 0);
+        Assert.assertNotNull(Language.getLanguage(languages[0].getBcp47Code()));
+    }
+
+    @Test
+    public void testReadLanguages() throws IOException {
+        String lang = "{\"name\":\"English (United States)\",\"fullname\":\"English (United States)\"," +
+                "\"speechlang\":\"en-US\",\"nlplang\":\"en\"}";
+        // a response as return by the server
+        Language[] languages = Language.readLanguages(new JsonReader(new StringReader(
+                "{\"status\":{\"code\":0},\"lang\":[" + lang + "],\"extra\":[1,2]}")));
+        Assert.assertEquals(1, languages.length);
+        Assert.assertEquals("en-US", languages[0].getBcp47Code());
+        Assert.assertEquals("en", languages[0].getLangCode());
+        // a plain array as stored by older versions
+        languages = Language.readLanguages(new JsonReader(new StringReader("[" + lang + "]")));
+        Assert.assertEquals(1, languages.length);
+        Assert.assertEquals("English (United States)", languages[0].getDisplayLanguage());
+        Assert.assertNull(Language.readLanguages(new JsonReader(new StringReader("{\"status\":{}}"))));
     }
 
 }
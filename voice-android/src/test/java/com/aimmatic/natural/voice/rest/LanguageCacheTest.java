@@ -0,0 +1,114 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.aimmatic.natural.voice.rest;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+import okhttp3.Request;
+
+public class LanguageCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("lang", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static String read(LanguageCache cache) throws IOException {
+        Reader in = cache.open();
+        try {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                sb.append((char) c);
+            }
+            return sb.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        LanguageCache cache = new LanguageCache(dir);
+        Assert.assertNull(cache.open());
+        Assert.assertEquals(0, cache.fetchedAt());
+        Request.Builder builder = new Request.Builder().url("http://localhost/langs");
+        cache.addValidators(builder);
+        Assert.assertNull(builder.build().header("If-None-Match"));
+    }
+
+    @Test
+    public void testAbort() throws IOException {
+        LanguageCache cache = new LanguageCache(dir);
+        InputStream in = cache.tee(new ByteArrayInputStream(new byte[]{'[', ']'}));
+        Assert.assertEquals('[', in.read());
+        cache.abort();
+        Assert.assertNull(cache.open());
+        Assert.assertFalse(new File(dir, LanguageCache.CATALOGUE + ".tmp").exists());
+    }
+
+    @Test
+    public void testWriteAndRevalidate() throws IOException {
+        LanguageCache cache = new LanguageCache(dir);
+        long before = System.currentTimeMillis();
+        String data = "{\"lang\":[{\"speechlang\":\"en-US\"}]}";
+        InputStream in = cache.tee(new ByteArrayInputStream(data.getBytes(Charset.forName("UTF-8"))));
+        // only a part of the response is read by the parser, the rest is copied on commit
+        Assert.assertEquals('{', in.read());
+        Assert.assertEquals(4, in.read(new byte[4]));
+        Assert.assertNull(cache.open());
+        cache.commit("\"v1\"", null);
+        Assert.assertEquals(data, read(new LanguageCache(dir)));
+        Assert.assertTrue(cache.fetchedAt() >= before);
+        Assert.assertFalse(new File(dir, LanguageCache.CATALOGUE + ".tmp").exists());
+
+        Request.Builder builder = new Request.Builder().url("http://localhost/langs");
+        cache.addValidators(builder);
+        Request request = builder.build();
+        Assert.assertEquals("\"v1\"", request.header("If-None-Match"));
+        Assert.assertNull(request.header("If-Modified-Since"));
+
+        cache.touch();
+        builder = new Request.Builder().url("http://localhost/langs");
+        new LanguageCache(dir).addValidators(builder);
+        Assert.assertEquals("\"v1\"", builder.build().header("If-None-Match"));
+    }
+
+}
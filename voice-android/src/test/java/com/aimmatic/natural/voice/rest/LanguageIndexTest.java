@@ -0,0 +1,75 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.aimmatic.natural.voice.rest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LanguageIndexTest {
+
+    @SuppressWarnings("deprecation")
+    private static LanguageIndex defaultIndex() {
+        return new LanguageIndex(Language.getAllSupportedLanguage());
+    }
+
+    @Test
+    public void testExactCode() {
+        LanguageIndex index = defaultIndex();
+        Assert.assertEquals("en-GB", index.find("en-GB").getBcp47Code());
+        Assert.assertEquals("en-GB", index.find("EN-gb").getBcp47Code());
+        Assert.assertEquals("en-GB", index.find("en_GB").getBcp47Code());
+        Assert.assertEquals("cmn-Hant-TW", index.find("cmn-Hant-TW").getBcp47Code());
+    }
+
+    @Test
+    public void testLanguageCode() {
+        LanguageIndex index = defaultIndex();
+        Assert.assertEquals("en-US", index.find("en").getBcp47Code());
+        Assert.assertEquals("de-DE", index.find("DE").getBcp47Code());
+        Assert.assertEquals("ja-JP", index.find("ja").getBcp47Code());
+        Assert.assertEquals("yue-Hant-HK", index.find("zh-Hant").getBcp47Code());
+    }
+
+    @Test
+    public void testBestMatch() {
+        LanguageIndex index = defaultIndex();
+        Assert.assertEquals("en-US", index.find("en-XX").getBcp47Code());
+        Assert.assertEquals("fr-FR", index.find("fr-BE").getBcp47Code());
+        Assert.assertEquals("es-MX", index.find("es-MX-x-private").getBcp47Code());
+        Assert.assertEquals("cmn-Hans-HK", index.find("cmn-Hans-SG").getBcp47Code());
+        Assert.assertNull(index.find("xx-YY"));
+        Assert.assertNull(index.find(""));
+        Assert.assertNull(index.find(null));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDefaultLanguages() {
+        Language[] languages = Language.getAllSupportedLanguage();
+        Assert.assertEquals(45, languages.length);
+        Language lang = Language.getLanguage("cmn-Hans-CN");
+        Assert.assertEquals("普通话 (中国大陆)", lang.getDisplayLanguage());
+        Assert.assertEquals("Chinese, Mandarin (Simplified China)", lang.getLangEn());
+        Assert.assertEquals("zh", lang.getLangCode());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testGetLanguage() {
+        Assert.assertEquals("es-MX", Language.getLanguage("es-mx").getBcp47Code());
+        Assert.assertEquals("pt-BR", Language.getLanguage("pt-XX").getBcp47Code());
+    }
+
+}
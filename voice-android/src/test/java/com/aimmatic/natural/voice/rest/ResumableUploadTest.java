@@ -0,0 +1,170 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.rest;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.ByteString;
+
+public class ResumableUploadTest {
+
+    private static final String SESSIONS = "/v1/insights/UploadAudio/sessions";
+    private static final int CHUNK_SIZE = 1000;
+
+    private MockWebServer server;
+    private TestAppContext appContext;
+    private UploadServer uploadServer;
+    private File audio;
+    private byte[] content;
+
+    // a server keeping the chunks of a single session in memory
+    private static class UploadServer extends Dispatcher {
+
+        final Map<Integer, byte[]> chunks = new TreeMap<>();
+        // chunk index to reject once with a server error
+        int failChunk = -1;
+        int chunkRequests;
+        byte[] completed;
+
+        @Override
+        public synchronized MockResponse dispatch(RecordedRequest request) {
+            String path = request.getPath();
+            if (path.equals(SESSIONS)) {
+                return new MockResponse().setBody("{\"data\":{\"id\":\"s1\"}}");
+            }
+            if (!path.startsWith(SESSIONS + "/s1")) {
+                return new MockResponse().setResponseCode(404);
+            }
+            if (path.equals(SESSIONS + "/s1")) {
+                StringBuilder received = new StringBuilder();
+                for (Integer index : chunks.keySet()) {
+                    received.append(received.length() == 0 ? "" : ",").append(index);
+                }
+                return new MockResponse().setBody("{\"data\":{\"id\":\"s1\",\"chunks\":[" + received + "]}}");
+            }
+            if (path.startsWith(SESSIONS + "/s1/chunks/")) {
+                chunkRequests++;
+                int index = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+                byte[] data = request.getBody().readByteArray();
+                if (index == failChunk) {
+                    failChunk = -1;
+                    return new MockResponse().setResponseCode(503);
+                }
+                String checksum = ByteString.of(data, 0, data.length).sha256().hex();
+                if (!checksum.equals(request.getHeader(ResumableVoiceSender.HEADER_CHUNK_CHECKSUM)) ||
+                        Long.parseLong(request.getHeader(ResumableVoiceSender.HEADER_CHUNK_OFFSET)) != (long) index * CHUNK_SIZE) {
+                    return new MockResponse().setResponseCode(422);
+                }
+                chunks.put(index, data);
+                return new MockResponse();
+            }
+            if (path.equals(SESSIONS + "/s1/complete")) {
+                int size = 0;
+                for (byte[] chunk : chunks.values()) {
+                    size += chunk.length;
+                }
+                completed = new byte[size];
+                int offset = 0;
+                for (byte[] chunk : chunks.values()) {
+                    System.arraycopy(chunk, 0, completed, offset, chunk.length);
+                    offset += chunk.length;
+                }
+                return new MockResponse().setBody("{\"data\":{\"id\":\"audio-id\"}}");
+            }
+            return new MockResponse().setResponseCode(404);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        uploadServer = new UploadServer();
+        server = new MockWebServer();
+        server.setDispatcher(uploadServer);
+        server.start();
+        appContext = new TestAppContext();
+        appContext.host = "http://" + server.getHostName() + ":" + server.getPort();
+        // 4 full chunks and a partial one
+        content = new byte[4 * CHUNK_SIZE + 500];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        audio = File.createTempFile("aimmatic-audio", ".flac");
+        FileOutputStream out = new FileOutputStream(audio);
+        out.write(content);
+        out.close();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        audio.delete();
+    }
+
+    @Test
+    public void testSendAllChunks() throws IOException {
+        ResumableVoiceSender sender = new ResumableVoiceSender(appContext, CHUNK_SIZE);
+        Response response = sender.sentVoice(audio, Resources.MEDIA_TYPE_FLAC, "en-US", 0, 0, 16000);
+        Assert.assertEquals(200, response.code());
+        Assert.assertEquals("{\"data\":{\"id\":\"audio-id\"}}", response.body().string());
+        Assert.assertEquals(5, uploadServer.chunkRequests);
+        Assert.assertTrue("Server must receive the whole audio", Arrays.equals(content, uploadServer.completed));
+    }
+
+    @Test
+    public void testResumeOnlyMissingChunks() throws IOException {
+        ResumableVoiceSender sender = new ResumableVoiceSender(appContext, CHUNK_SIZE);
+        String session = sender.createSession(audio, Resources.MEDIA_TYPE_FLAC, "en-US", 0, 0, 16000);
+        uploadServer.failChunk = 3;
+        try {
+            sender.resume(session, audio);
+            Assert.fail("Expect upload to fail at chunk 3");
+        } catch (UploadException e) {
+            Assert.assertEquals(503, e.getCode());
+        }
+        Assert.assertEquals(3, uploadServer.chunks.size());
+        // chunk 0, 1 and 2 must not be sent again
+        Response response = sender.resume(session, audio);
+        Assert.assertEquals(200, response.code());
+        response.close();
+        Assert.assertEquals(4 + 2, uploadServer.chunkRequests);
+        Assert.assertTrue("Server must receive the whole audio", Arrays.equals(content, uploadServer.completed));
+    }
+
+    @Test
+    public void testExpiredSession() throws IOException {
+        ResumableVoiceSender sender = new ResumableVoiceSender(appContext, CHUNK_SIZE);
+        try {
+            sender.resume("expired", audio);
+            Assert.fail("Expect unknown session to fail");
+        } catch (UploadException e) {
+            Assert.assertEquals(404, e.getCode());
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+Copyright 2018 The AimMatic Authors.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.aimmatic.natural.voice.rest;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+public class StreamingUploadTest {
+
+    private MockWebServer server;
+    private TestAppContext appContext;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        appContext = new TestAppContext();
+        appContext.host = "http://" + server.getHostName() + ":" + server.getPort();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void testStreamWhileWriting() throws InterruptedException, IOException {
+        server.enqueue(new MockResponse().setBody("{\"id\":\"audio-id\"}"));
+        StreamingAudioBody body = new StreamingAudioBody(Resources.MEDIA_TYPE_FLAC);
+        Call call = new VoiceSender(appContext).newVoiceCall(body, "aimmatic-audio.flac", "en-US", 0, 0, 16000);
+        final AsyncWait cdl = new AsyncWait(1);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                cdl.failed = true;
+                cdl.countDown();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                cdl.failed = response.code() != 200;
+                cdl.response = response.body() != null ? response.body().string() : null;
+                cdl.countDown();
+            }
+        });
+        // the request is already sent while the audio is written
+        byte[] frame = new byte[1000];
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < frame.length; j++) {
+                frame[j] = (byte) ('a' + i);
+            }
+            body.write(frame, frame.length);
+        }
+        body.close();
+        cdl.await();
+        Assert.assertFalse("Streaming upload failed", cdl.failed);
+        Assert.assertEquals("{\"id\":\"audio-id\"}", cdl.response);
+
+        RecordedRequest request = server.takeRequest();
+        Assert.assertEquals("/v1/insights/UploadAudio", request.getPath());
+        Assert.assertEquals("chunked", request.getHeader("Transfer-Encoding"));
+        String content = request.getBody().readUtf8();
+        Assert.assertTrue("Missing audio part", content.contains("filename=\"aimmatic-audio.flac\""));
+        Assert.assertTrue("Missing first frame", content.contains(new String(new char[1000]).replace('\0', 'a')));
+        Assert.assertTrue("Missing last frame", content.contains(new String(new char[1000]).replace('\0', 't')));
+    }
+
+    @Test
+    public void testSentOnce() throws IOException {
+        StreamingAudioBody body = new StreamingAudioBody(Resources.MEDIA_TYPE_FLAC);
+        body.write(new byte[]{1, 2, 3}, 3);
+        body.close();
+        Buffer sent = new Buffer();
+        body.writeTo(sent);
+        Assert.assertEquals(3, sent.size());
+        try {
+            body.writeTo(new Buffer());
+            Assert.fail("Expect second write to fail");
+        } catch (IOException ignored) {
+        }
+    }
+
+}
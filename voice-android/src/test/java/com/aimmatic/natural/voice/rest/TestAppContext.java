@@ -14,6 +14,7 @@ limitations under the License.
 package com.aimmatic.natural.voice.rest;
 
 import com.aimmatic.natural.core.rest.AppContext;
+import com.aimmatic.natural.core.rest.HttpClients;
 import com.aimmatic.natural.core.rest.Interceptor;
 import com.aimmatic.natural.oauth.AccessToken;
 import com.aimmatic.natural.oauth.Profile;
@@ -31,18 +32,35 @@ public class TestAppContext implements AppContext {
     private static final String ENV_APIKEY = "AIMMATIC_APIKEY";
 
     OkHttpClient okHttpClient;
+    // override the host from environment, use by test against a local server
+    String host;
     Profile profile;
     String accessToken;
     String refreshToken;
     String appId;
     String customerId;
 
+    /**
+     * Create a context which host come from environment
+     */
+    public TestAppContext() {
+    }
+
+    /**
+     * Create a context of a local server
+     *
+     * @param host a base url of the server
+     */
+    public TestAppContext(String host) {
+        this.host = host;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public String getHost() {
-        return System.getenv(ENV_HOST);
+        return host != null ? host : System.getenv(ENV_HOST);
     }
 
     /**
@@ -59,7 +77,7 @@ public class TestAppContext implements AppContext {
     @Override
     public synchronized OkHttpClient getOkHttpClient() {
         if (okHttpClient == null) {
-            okHttpClient = new OkHttpClient().newBuilder()
+            okHttpClient = HttpClients.getBaseClient().newBuilder()
                     .addInterceptor(new Interceptor(this)).build();
         }
         return okHttpClient;
@@ -88,6 +106,7 @@ public class TestAppContext implements AppContext {
     @Override
     public void setAppId(String appId) {
         this.appId = appId;
+        Interceptor.invalidateHeaders();
     }
 
     /**
@@ -101,6 +120,7 @@ public class TestAppContext implements AppContext {
     @Override
     public void setCustomerId(String customerId) {
         this.customerId = customerId;
+        Interceptor.invalidateHeaders();
     }
 
     /**